@@ -0,0 +1,189 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Decides how aggressively to advertise, trading reconnect time against battery.
+ *
+ * Phases:
+ * - Right after start or after the last controller disconnects: LOW_LATENCY for a
+ *   short burst, so a controller that dropped out (or is waiting for us) reconnects fast
+ * - Then BALANCED, until the idle backoff elapses
+ * - Then LOW_POWER for as long as nobody connects
+ * - While at least one controller is connected: the connected mode (LOW_POWER by default,
+ *   so a second controller can still find us; OFF to stop advertising entirely)
+ *
+ * The policy holds no timers and reads no clock: the owner reports events with a
+ * timestamp, applies getMode(), and calls evaluate() again after getNextTransitionDelayMs().
+ * Mode changes are reported to a Listener and counted.
+ *
+ * Thread Safety: Not thread-safe; use from one thread (BleAdvertiser uses the main thread).
+ */
+public class AdvertisingPolicy {
+
+    /**
+     * Advertising intensity, from none to the fastest interval.
+     */
+    public enum Mode {
+        OFF,
+        LOW_POWER,
+        BALANCED,
+        LOW_LATENCY
+    }
+
+    /**
+     * Listener for mode changes, e.g. to reconfigure the advertiser or log transitions.
+     */
+    public interface Listener {
+        void onModeChanged(Mode from, Mode to, String reason);
+    }
+
+    public static final long DEFAULT_FAST_DURATION_MS = 30_000;
+    public static final long DEFAULT_IDLE_BACKOFF_MS = 5 * 60_000;
+
+    private long fastDurationMs = DEFAULT_FAST_DURATION_MS;
+    private long idleBackoffMs = DEFAULT_IDLE_BACKOFF_MS;
+    private Mode connectedMode = Mode.LOW_POWER;
+
+    private Listener listener;
+
+    private boolean running;
+    private int connectedCount;
+
+    // When the server last became idle (started, or the last controller left)
+    private long idleSinceMs;
+
+    private Mode mode = Mode.OFF;
+    private long modeSinceMs;
+    private final long[] timeInModeMs = new long[Mode.values().length];
+    private int transitionCount;
+
+    /**
+     * Set how long to advertise in LOW_LATENCY after start or the last disconnect.
+     */
+    public void setFastDurationMs(long fastDurationMs) {
+        this.fastDurationMs = fastDurationMs;
+    }
+
+    /**
+     * Set how long after becoming idle to drop to LOW_POWER. Measured from the same
+     * point as the fast burst, so it should be longer than setFastDurationMs().
+     */
+    public void setIdleBackoffMs(long idleBackoffMs) {
+        this.idleBackoffMs = idleBackoffMs;
+    }
+
+    /**
+     * Set the mode used while at least one controller is connected.
+     */
+    public void setConnectedMode(Mode connectedMode) {
+        this.connectedMode = connectedMode;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start advertising, beginning with the fast reconnect burst.
+     */
+    public Mode start(long nowMs) {
+        running = true;
+        connectedCount = 0;
+        idleSinceMs = nowMs;
+        return evaluate(nowMs, "start");
+    }
+
+    public Mode stop(long nowMs) {
+        running = false;
+        return evaluate(nowMs, "stop");
+    }
+
+    /**
+     * Report the number of connected controllers after a connect or disconnect.
+     */
+    public Mode onConnectionCountChanged(int count, long nowMs) {
+        int previous = connectedCount;
+        connectedCount = count;
+        if (previous > 0 && count == 0) {
+            idleSinceMs = nowMs;
+            return evaluate(nowMs, "disconnected");
+        }
+        return evaluate(nowMs, count > previous ? "connected" : "connection count changed");
+    }
+
+    /**
+     * Re-evaluate the mode, e.g. when the delay from getNextTransitionDelayMs() has passed.
+     */
+    public Mode evaluate(long nowMs) {
+        return evaluate(nowMs, "timer");
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Get the time until the mode changes without further events, or -1 if it will not.
+     */
+    public long getNextTransitionDelayMs(long nowMs) {
+        if (!running || connectedCount > 0) {
+            return -1;
+        }
+        long idleMs = nowMs - idleSinceMs;
+        if (idleMs < fastDurationMs) {
+            return fastDurationMs - idleMs;
+        }
+        if (idleMs < idleBackoffMs) {
+            return idleBackoffMs - idleMs;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the total time spent in a mode, including the current stretch.
+     */
+    public long getTimeInModeMs(Mode target, long nowMs) {
+        long total = timeInModeMs[target.ordinal()];
+        return target == mode ? total + (nowMs - modeSinceMs) : total;
+    }
+
+    public int getTransitionCount() {
+        return transitionCount;
+    }
+
+    private Mode evaluate(long nowMs, String reason) {
+        Mode next = targetMode(nowMs);
+        if (next != mode) {
+            Mode previous = mode;
+            timeInModeMs[previous.ordinal()] += nowMs - modeSinceMs;
+            mode = next;
+            modeSinceMs = nowMs;
+            transitionCount++;
+            if (listener != null) {
+                listener.onModeChanged(previous, next, reason);
+            }
+        }
+        return mode;
+    }
+
+    private Mode targetMode(long nowMs) {
+        if (!running) {
+            return Mode.OFF;
+        }
+        if (connectedCount > 0) {
+            return connectedMode;
+        }
+        long idleMs = nowMs - idleSinceMs;
+        if (idleMs < fastDurationMs) {
+            return Mode.LOW_LATENCY;
+        }
+        if (idleMs < idleBackoffMs) {
+            return Mode.BALANCED;
+        }
+        return Mode.LOW_POWER;
+    }
+
+    @Override
+    public String toString() {
+        return "mode=" + mode + ", connected=" + connectedCount + ", transitions=" + transitionCount;
+    }
+}
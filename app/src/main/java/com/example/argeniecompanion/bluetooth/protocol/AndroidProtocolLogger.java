@@ -0,0 +1,44 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import android.util.Log;
+
+import com.example.argeniecompanion.BuildConfig;
+
+/**
+ * ProtocolLogger backed by android.util.Log.
+ *
+ * Debug messages are on in debug builds; release builds only log them for tags
+ * enabled with "adb shell setprop log.tag.TAG DEBUG".
+ */
+public final class AndroidProtocolLogger implements ProtocolLogger {
+
+    public static final AndroidProtocolLogger INSTANCE = new AndroidProtocolLogger();
+
+    private AndroidProtocolLogger() {
+    }
+
+    @Override
+    public boolean isDebugEnabled(String tag) {
+        return BuildConfig.DEBUG || Log.isLoggable(tag, Log.DEBUG);
+    }
+
+    @Override
+    public void d(String tag, String message) {
+        Log.d(tag, message);
+    }
+
+    @Override
+    public void i(String tag, String message) {
+        Log.i(tag, message);
+    }
+
+    @Override
+    public void w(String tag, String message) {
+        Log.w(tag, message);
+    }
+
+    @Override
+    public void e(String tag, String message, Throwable error) {
+        Log.e(tag, message, error);
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.util.Log;
+
+/**
+ * In-memory cache of the battery state for BLE status responses.
+ *
+ * Subscribes once to ACTION_BATTERY_CHANGED and keeps the last level, charging state
+ * and temperature, so building a response never needs a binder call to the system.
+ *
+ * Thread Safety: Updated on the main thread by the broadcast, read from any thread.
+ */
+public class BatteryStateProvider implements BleProtocolEngine.BatterySource {
+
+    /**
+     * Listener for battery level or charging state changes (not temperature,
+     * which changes too often to be interesting). Called on the main thread.
+     */
+    public interface Listener {
+        void onBatteryStateChanged(int level, boolean charging);
+    }
+
+    private static final String TAG = "BatteryStateProvider";
+
+    // Reported until the first battery broadcast arrives
+    private static final int DEFAULT_LEVEL = 50;
+
+    private final Context context;
+
+    private volatile int level = DEFAULT_LEVEL;
+    private volatile boolean charging = false;
+    private volatile int temperatureDeciC = BleProtocol.TEMPERATURE_UNKNOWN;
+    private boolean registered = false;
+    private volatile Listener listener;
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            update(intent);
+        }
+    };
+
+    public BatteryStateProvider(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start listening for battery changes. The sticky broadcast primes the cache immediately.
+     */
+    public synchronized void start() {
+        if (registered) {
+            return;
+        }
+
+        Intent sticky = context.registerReceiver(batteryReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        registered = true;
+
+        if (sticky != null) {
+            update(sticky);
+        } else {
+            // No sticky broadcast yet; ask BatteryManager for the capacity once
+            BatteryManager batteryManager =
+                    (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+            if (batteryManager != null) {
+                int capacity = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+                if (capacity >= 0 && capacity <= 100) {
+                    level = capacity;
+                }
+                charging = batteryManager.isCharging();
+            }
+        }
+    }
+
+    /**
+     * Stop listening for battery changes. The last known values stay available.
+     */
+    public synchronized void stop() {
+        if (!registered) {
+            return;
+        }
+
+        try {
+            context.unregisterReceiver(batteryReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Battery receiver was not registered", e);
+        }
+        registered = false;
+    }
+
+    /**
+     * Get the battery level percentage (0-100), or 50 if unknown.
+     */
+    @Override
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Check if the battery is charging or full on external power.
+     */
+    @Override
+    public boolean isCharging() {
+        return charging;
+    }
+
+    /**
+     * Get the battery temperature in tenths of a degree Celsius,
+     * or BleProtocol.TEMPERATURE_UNKNOWN.
+     */
+    @Override
+    public int getTemperatureDeciC() {
+        return temperatureDeciC;
+    }
+
+    private void update(Intent intent) {
+        int previousLevel = level;
+        boolean previousCharging = charging;
+
+        int rawLevel = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (rawLevel >= 0 && scale > 0) {
+            level = (int) ((rawLevel / (float) scale) * 100);
+        }
+
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+
+        temperatureDeciC = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE,
+                BleProtocol.TEMPERATURE_UNKNOWN);
+
+        Listener l = listener;
+        if (l != null && (level != previousLevel || charging != previousCharging)) {
+            l.onBatteryStateChanged(level, charging);
+        }
+    }
+}
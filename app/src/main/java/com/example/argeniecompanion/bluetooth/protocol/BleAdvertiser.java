@@ -0,0 +1,277 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.AdvertiseData;
+import android.bluetooth.le.AdvertisingSet;
+import android.bluetooth.le.AdvertisingSetCallback;
+import android.bluetooth.le.AdvertisingSetParameters;
+import android.bluetooth.le.BluetoothLeAdvertiser;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Connectable BLE advertising driven by an AdvertisingPolicy.
+ *
+ * Advertises fast for a burst after start and after the last controller disconnects,
+ * backs off while idle, and slows down or stops while a controller is connected.
+ * Each mode change restarts the advertising set with the matching interval and TX power.
+ *
+ * Optionally carries a status beacon (see BleProtocol.BEACON_VERSION) as service data,
+ * so passive scanners can read the state without connecting. Beacon updates change the
+ * advertising data in place, without restarting the set.
+ *
+ * Advertisement layout (legacy PDUs, 31 bytes each):
+ * - Without beacon: advertisement = service UUID + device name
+ * - With beacon: advertisement = service data (SERVICE_UUID, beacon);
+ *   scan response = service UUID + device name (dropped if it does not fit)
+ *
+ * Thread Safety: Policy events, timers and advertiser callbacks run on the main thread;
+ * the public methods may be called from any thread.
+ */
+@SuppressLint("MissingPermission")
+public class BleAdvertiser {
+
+    private static final String TAG = "BleAdvertiser";
+
+    private final ParcelUuid serviceUuid;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AdvertisingPolicy policy = new AdvertisingPolicy();
+
+    // Main thread only
+    private BluetoothLeAdvertiser advertiser;
+    private AdvertisingSet advertisingSet;
+    private boolean advertising;
+    private byte[] statusBeacon;
+    // Beacon in the advertising data of the current set; updates made while the set
+    // was starting are applied once it has started
+    private byte[] advertisedBeacon;
+    private boolean includeDeviceName = true;
+
+    private volatile AdvertisingPolicy.Listener modeListener;
+
+    private final Runnable evaluateTask = () -> {
+        policy.evaluate(SystemClock.elapsedRealtime());
+        scheduleEvaluation();
+    };
+
+    public BleAdvertiser(UUID serviceUuid) {
+        this.serviceUuid = new ParcelUuid(serviceUuid);
+        policy.setListener((from, to, reason) -> {
+            Log.i(TAG, "Advertising " + from + " -> " + to + " (" + reason + ")");
+            apply(to);
+            AdvertisingPolicy.Listener listener = modeListener;
+            if (listener != null) {
+                listener.onModeChanged(from, to, reason);
+            }
+        });
+    }
+
+    /**
+     * Get the policy to configure its durations and connected mode.
+     * Configure before start(), or from the main thread.
+     */
+    public AdvertisingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Set a listener for mode changes. Called on the main thread after the mode is applied.
+     */
+    public void setModeListener(AdvertisingPolicy.Listener listener) {
+        this.modeListener = listener;
+    }
+
+    /**
+     * Set the status beacon to advertise as service data, or null for none.
+     * Turning the beacon on or off restarts advertising; changing it does not.
+     * Only the latest beacon is kept while the advertising set is starting.
+     */
+    public void setStatusBeacon(byte[] beacon) {
+        mainHandler.post(() -> {
+            if (Arrays.equals(beacon, statusBeacon)) {
+                return;
+            }
+            boolean layoutChanged = (beacon == null) != (statusBeacon == null);
+            statusBeacon = beacon;
+
+            if (layoutChanged) {
+                apply(policy.getMode());
+            } else if (advertisingSet != null) {
+                advertisingSet.setAdvertisingData(buildAdvertiseData());
+                advertisedBeacon = beacon;
+            }
+        });
+    }
+
+    /**
+     * Start advertising on the given adapter.
+     *
+     * @return true if the advertiser is available, false otherwise
+     */
+    public boolean start(BluetoothAdapter adapter) {
+        BluetoothLeAdvertiser leAdvertiser = adapter.getBluetoothLeAdvertiser();
+        if (leAdvertiser == null) {
+            Log.e(TAG, "Advertiser not available");
+            return false;
+        }
+
+        mainHandler.post(() -> {
+            advertiser = leAdvertiser;
+            includeDeviceName = true;
+            policy.start(SystemClock.elapsedRealtime());
+            scheduleEvaluation();
+        });
+        return true;
+    }
+
+    /**
+     * Stop advertising.
+     */
+    public void stop() {
+        mainHandler.post(() -> {
+            mainHandler.removeCallbacks(evaluateTask);
+            policy.stop(SystemClock.elapsedRealtime());
+            advertiser = null;
+        });
+    }
+
+    /**
+     * Report the number of connected controllers after a connect or disconnect.
+     */
+    public void onConnectionCountChanged(int count) {
+        mainHandler.post(() -> {
+            policy.onConnectionCountChanged(count, SystemClock.elapsedRealtime());
+            scheduleEvaluation();
+        });
+    }
+
+    private void scheduleEvaluation() {
+        mainHandler.removeCallbacks(evaluateTask);
+        long delay = policy.getNextTransitionDelayMs(SystemClock.elapsedRealtime());
+        if (delay >= 0) {
+            mainHandler.postDelayed(evaluateTask, delay);
+        }
+    }
+
+    /**
+     * Restart advertising in the given mode, or just stop it for OFF.
+     */
+    private void apply(AdvertisingPolicy.Mode mode) {
+        if (advertiser == null) {
+            return;
+        }
+
+        if (advertising) {
+            try {
+                advertiser.stopAdvertisingSet(advertisingSetCallback);
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping advertising", e);
+            }
+            advertising = false;
+            advertisingSet = null;
+        }
+        if (mode == AdvertisingPolicy.Mode.OFF) {
+            return;
+        }
+
+        AdvertisingSetParameters parameters = new AdvertisingSetParameters.Builder()
+                .setLegacyMode(true)
+                .setConnectable(true)
+                .setScannable(true)
+                .setInterval(advertiseInterval(mode))
+                .setTxPowerLevel(mode == AdvertisingPolicy.Mode.LOW_POWER
+                        ? AdvertisingSetParameters.TX_POWER_LOW
+                        : AdvertisingSetParameters.TX_POWER_MEDIUM)
+                .build();
+
+        AdvertiseData scanResponse = statusBeacon != null
+                ? new AdvertiseData.Builder()
+                        .setIncludeDeviceName(includeDeviceName)
+                        .addServiceUuid(serviceUuid)
+                        .build()
+                : null;
+
+        advertiser.startAdvertisingSet(parameters, buildAdvertiseData(), scanResponse,
+                null, null, advertisingSetCallback);
+        advertisedBeacon = statusBeacon;
+        advertising = true;
+    }
+
+    private AdvertiseData buildAdvertiseData() {
+        AdvertiseData.Builder data = new AdvertiseData.Builder();
+        if (statusBeacon != null) {
+            data.addServiceData(serviceUuid, statusBeacon);
+        } else {
+            data.setIncludeDeviceName(includeDeviceName)
+                    .addServiceUuid(serviceUuid);
+        }
+        return data.build();
+    }
+
+    private static int advertiseInterval(AdvertisingPolicy.Mode mode) {
+        switch (mode) {
+            case LOW_LATENCY:
+                return AdvertisingSetParameters.INTERVAL_LOW;
+            case BALANCED:
+                return AdvertisingSetParameters.INTERVAL_MEDIUM;
+            default:
+                return AdvertisingSetParameters.INTERVAL_HIGH;
+        }
+    }
+
+    // ==================== Callbacks ====================
+
+    private final AdvertisingSetCallback advertisingSetCallback = new AdvertisingSetCallback() {
+        @Override
+        public void onAdvertisingSetStarted(AdvertisingSet set, int txPower, int status) {
+            if (status == ADVERTISE_SUCCESS) {
+                advertisingSet = set;
+                Log.i(TAG, "BLE advertising started: " + policy.getMode() + ", txPower=" + txPower);
+                if (!Arrays.equals(statusBeacon, advertisedBeacon)) {
+                    set.setAdvertisingData(buildAdvertiseData());
+                    advertisedBeacon = statusBeacon;
+                }
+                return;
+            }
+
+            Log.e(TAG, "BLE advertising failed: " + getAdvertiseErrorString(status));
+            advertising = false;
+            if (status == ADVERTISE_FAILED_DATA_TOO_LARGE && includeDeviceName) {
+                // Long device names do not fit next to a 128-bit UUID; advertise without it
+                includeDeviceName = false;
+                apply(policy.getMode());
+            }
+        }
+
+        @Override
+        public void onAdvertisingDataSet(AdvertisingSet set, int status) {
+            if (status != ADVERTISE_SUCCESS) {
+                Log.w(TAG, "Status beacon update failed: " + getAdvertiseErrorString(status));
+            }
+        }
+
+        private String getAdvertiseErrorString(int errorCode) {
+            switch (errorCode) {
+                case ADVERTISE_FAILED_DATA_TOO_LARGE:
+                    return "DATA_TOO_LARGE";
+                case ADVERTISE_FAILED_TOO_MANY_ADVERTISERS:
+                    return "TOO_MANY_ADVERTISERS";
+                case ADVERTISE_FAILED_ALREADY_STARTED:
+                    return "ALREADY_STARTED";
+                case ADVERTISE_FAILED_INTERNAL_ERROR:
+                    return "INTERNAL_ERROR";
+                case ADVERTISE_FAILED_FEATURE_UNSUPPORTED:
+                    return "FEATURE_UNSUPPORTED";
+                default:
+                    return "UNKNOWN(" + errorCode + ")";
+            }
+        }
+    };
+}
@@ -3,6 +3,13 @@ package com.example.argeniecompanion.bluetooth.protocol;
 /**
  * Listener interface for handling BLE commands from the Controller app.
  * Implementations should handle the business logic for each command.
+ *
+ * Callbacks are invoked on the BLE command thread, not the main thread. They should
+ * return quickly and hop to the main thread themselves for any UI work.
+ *
+ * Mute/unmute commands are coalesced: toggles received within a short window are
+ * reported once, with the final state, even if they cancel out. Scroll
+ * deltas are coalesced too: at most one onNavScroll() per frame, with the summed delta.
  */
 public interface BleCommandListener {
 
@@ -39,4 +46,19 @@ public interface BleCommandListener {
      * Called when a VIDEO_UNMUTE command is received.
      */
     void onVideoUnmute();
+
+    /**
+     * Called when a NAV_KEY command is received.
+     *
+     * @param key One of BleProtocol.NAV_KEY_*; unknown values should be ignored
+     */
+    void onNavKey(int key);
+
+    /**
+     * Called with the summed deltas of NAV_SCROLL commands.
+     *
+     * @param dx Horizontal display pixels, positive = right
+     * @param dy Vertical display pixels, positive = down
+     */
+    void onNavScroll(int dx, int dy);
 }
@@ -1,6 +1,6 @@
 package com.example.argeniecompanion.bluetooth.protocol;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 
 /**
  * Parser for incoming BLE binary commands.
@@ -8,16 +8,28 @@ import java.nio.charset.StandardCharsets;
  * Packet Structure:
  * ┌─────────┬─────────┬────────┬───────────┬──────────┐
  * │ VERSION │ COMMAND │ LENGTH │  PAYLOAD  │ CHECKSUM │
- * │  1 byte │  1 byte │ 1 byte │  0-N bytes│  1 byte  │
+ * │  1 byte │  1 byte │ 1 byte │  0-N bytes│ 1-2 bytes│
  * └─────────┴─────────┴────────┴───────────┴──────────┘
+ * v1 frames end in a 1-byte XOR checksum, v2 frames in a big-endian CRC-16.
+ * If VERSION has FRAME_FLAG_REQUEST_ID set, a request ID byte precedes the checksum,
+ * followed by a sequence number byte if FRAME_FLAG_SEQUENCE is set.
+ * Known opcodes and their payload decoders come from BleCommandRegistry.
  *
  * JOIN_ROOM Payload Structure:
  * [linkCodeLen:1][linkCode:N][userNameLen:1][userName:M]
+ *
+ * HELLO Payload Structure:
+ * [maxVersion:1][capabilities:1]
+ *
+ * BATCH Payload Structure (1..MAX_BATCH_COMMANDS entries, no nested BATCH or HELLO):
+ * {[command:1][length:1][payload:length]}*
  */
 public final class BleCommandParser {
 
     private static final String TAG = "BleCommandParser";
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     private BleCommandParser() {
         // Prevent instantiation
     }
@@ -29,135 +41,256 @@ public final class BleCommandParser {
      * @return ParsedCommand with either valid command data or error status
      */
     public static ParsedCommand parse(byte[] data) {
-        if (data == null || data.length < BleProtocol.MIN_PACKET_SIZE) {
+        if (data == null) {
             return ParsedCommand.invalid(BleProtocol.STATUS_INVALID_COMMAND);
         }
+        return parse(data, 0, data.length, new ParsedCommand());
+    }
 
-        // Extract header fields
-        byte version = data[0];
-        byte command = data[1];
-        int payloadLength = data[2] & 0xFF; // Unsigned byte
-        byte receivedChecksum = data[data.length - 1];
+    /**
+     * Parse the readable bytes of a buffer into a reusable command.
+     * Heap buffers are parsed in place; direct buffers are copied first.
+     * The buffer position is not modified.
+     *
+     * @param buffer The buffer holding one packet between position and limit
+     * @param out    The command instance to reset and fill
+     * @return {@code out}, filled with either valid command data or error status
+     */
+    public static ParsedCommand parse(ByteBuffer buffer, ParsedCommand out) {
+        if (buffer == null) {
+            return out.setInvalid((byte) 0, BleProtocol.STATUS_INVALID_COMMAND);
+        }
+        if (buffer.hasArray()) {
+            return parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), out);
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return parse(copy, 0, copy.length, out);
+    }
 
-        // Validate version
-        if (version != BleProtocol.PROTOCOL_VERSION) {
-            return ParsedCommand.invalid(command, BleProtocol.STATUS_INVALID_COMMAND);
+    /**
+     * Parse a packet from a window of a byte array into a reusable command, without
+     * copying the payload or decoding JOIN_ROOM strings. The returned command keeps
+     * references into {@code data}, so the array must stay untouched while it is in use.
+     *
+     * @param data   The array holding the packet
+     * @param offset Index of the VERSION byte
+     * @param length Number of packet bytes, including the checksum
+     * @param out    The command instance to reset and fill
+     * @return {@code out}, filled with either valid command data or error status
+     */
+    public static ParsedCommand parse(byte[] data, int offset, int length, ParsedCommand out) {
+        if (data == null || length < BleProtocol.MIN_PACKET_SIZE
+                || offset < 0 || offset + length > data.length) {
+            return out.setInvalid((byte) 0, BleProtocol.STATUS_INVALID_COMMAND);
         }
 
-        // Validate packet length
-        int expectedLength = BleProtocol.MIN_PACKET_SIZE + payloadLength;
-        if (data.length != expectedLength) {
-            return ParsedCommand.invalid(command, BleProtocol.STATUS_INVALID_PAYLOAD);
+        // Extract header fields; the high nibble of VERSION holds frame flags
+        int frameFlags = data[offset] & ~BleProtocol.VERSION_MASK & 0xFF;
+        byte version = (byte) (data[offset] & BleProtocol.VERSION_MASK);
+        byte command = data[offset + 1];
+        int payloadLength = data[offset + 2] & 0xFF; // Unsigned byte
+        boolean hasRequestId = (frameFlags & BleProtocol.FRAME_FLAG_REQUEST_ID) != 0;
+        boolean hasSequence = (frameFlags & BleProtocol.FRAME_FLAG_SEQUENCE) != 0;
+
+        // Validate version and flags
+        if (!BleProtocol.isSupportedVersion(version)
+                || (frameFlags & ~BleProtocol.SUPPORTED_FRAME_FLAGS) != 0) {
+            return out.setInvalid(command, BleProtocol.STATUS_INVALID_COMMAND);
         }
 
-        // Validate checksum (XOR of all bytes except checksum itself)
-        byte calculatedChecksum = BleProtocol.calculateChecksum(data, data.length - 1);
-        if (receivedChecksum != calculatedChecksum) {
-            return ParsedCommand.invalid(command, BleProtocol.STATUS_INVALID_COMMAND);
+        // Validate packet length
+        int trailerLength = (hasRequestId ? 1 : 0) + (hasSequence ? 1 : 0);
+        int expectedLength = BleProtocol.minPacketSize(version) + payloadLength + trailerLength;
+        if (length != expectedLength) {
+            return out.setInvalid(version, command, BleProtocol.STATUS_INVALID_PAYLOAD);
         }
+        int requestId = hasRequestId
+                ? data[offset + 3 + payloadLength] & 0xFF
+                : BleProtocol.NO_REQUEST_ID;
+        int sequence = hasSequence
+                ? data[offset + 3 + payloadLength + (hasRequestId ? 1 : 0)] & 0xFF
+                : BleProtocol.NO_SEQUENCE;
 
-        // Extract payload
-        byte[] payload = null;
-        if (payloadLength > 0) {
-            payload = new byte[payloadLength];
-            System.arraycopy(data, 3, payload, 0, payloadLength);
+        // Validate integrity over all bytes except the trailing checksum/CRC
+        if (!verifyChecksum(version, data, offset, length)) {
+            // The request ID itself may be corrupt, so it is not echoed
+            return out.setInvalid(version, command, BleProtocol.STATUS_INVALID_COMMAND);
         }
 
         // Validate command type
         if (!isValidCommand(command)) {
-            return ParsedCommand.invalid(command, BleProtocol.STATUS_INVALID_COMMAND);
+            return invalid(out, version, command, requestId, BleProtocol.STATUS_INVALID_COMMAND);
         }
 
-        // Create valid parsed command
-        ParsedCommand parsedCommand = ParsedCommand.valid(command, payload);
+        // Point the command at the payload window
+        int payloadOffset = offset + 3;
+        out.setValid(version, command, data, payloadOffset, payloadLength);
+        out.setRequestId(requestId);
+        out.setSequence(sequence);
 
         // Parse command-specific payload
-        if (command == BleProtocol.CMD_JOIN_ROOM) {
-            if (!parseJoinRoomPayload(parsedCommand, payload)) {
-                return ParsedCommand.invalid(command, BleProtocol.STATUS_INVALID_PAYLOAD);
+        if (!parsePayload(command, out, data, payloadOffset, payloadLength)) {
+            return invalid(out, version, command, requestId, BleProtocol.STATUS_INVALID_PAYLOAD);
+        }
+
+        return out;
+    }
+
+    private static ParsedCommand invalid(ParsedCommand out, byte version, byte command,
+                                         int requestId, byte errorStatus) {
+        out.setInvalid(version, command, errorStatus);
+        out.setRequestId(requestId);
+        return out;
+    }
+
+    /**
+     * Read the next sub-command of a parsed BATCH command into a reusable command.
+     * The batch was fully validated by {@link #parse}, so every entry is valid.
+     *
+     * Usage:
+     * <pre>
+     * for (int pos = 0; (pos = BleCommandParser.nextBatchEntry(batch, pos, entry)) > 0; ) { ... }
+     * </pre>
+     *
+     * @param batch    A valid BATCH command
+     * @param position Offset of the entry within the batch payload (0 for the first)
+     * @param out      The command instance to reset and fill with the entry
+     * @return Position of the following entry, or -1 if there are no more entries
+     */
+    public static int nextBatchEntry(ParsedCommand batch, int position, ParsedCommand out) {
+        if (position < 0 || position + 2 > batch.getPayloadLength()) {
+            return -1;
+        }
+
+        byte[] data = batch.getSource();
+        int entryOffset = batch.getPayloadOffset() + position;
+        byte command = data[entryOffset];
+        int length = data[entryOffset + 1] & 0xFF;
+
+        out.setValid(batch.getVersion(), command, data, entryOffset + 2, length);
+        parsePayload(command, out, data, entryOffset + 2, length);
+
+        return position + 2 + length;
+    }
+
+    /**
+     * Validate a command-specific payload with the decoder registered for the command
+     * and record any field windows in {@code out}.
+     *
+     * @param out The command to populate, or null to only validate
+     * @return true if the payload is well-formed for the command
+     */
+    private static boolean parsePayload(byte command, ParsedCommand out, byte[] data, int offset, int length) {
+        return BleCommandRegistry.get(command).getDecoder().decode(out, data, offset, length);
+    }
+
+    /**
+     * Validate a BATCH payload: every TLV entry must fit, name a known command that is
+     * allowed inside a batch, and carry a valid payload for that command.
+     */
+    static boolean validateBatchPayload(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int pos = offset;
+        int count = 0;
+
+        while (pos < end) {
+            if (pos + 2 > end || ++count > BleProtocol.MAX_BATCH_COMMANDS) {
+                return false;
+            }
+
+            byte command = data[pos];
+            int entryLength = data[pos + 1] & 0xFF;
+            pos += 2;
+
+            BleCommandRegistry.Spec spec = BleCommandRegistry.get(command);
+            if (spec == null || !spec.isRequest() || !spec.isBatchable()) {
+                return false;
             }
-        } else {
-            // Commands without payload should have empty payload
-            if (payloadLength > 0) {
-                return ParsedCommand.invalid(command, BleProtocol.STATUS_INVALID_PAYLOAD);
+            if (pos + entryLength > end || !parsePayload(command, null, data, pos, entryLength)) {
+                return false;
             }
+            pos += entryLength;
         }
 
-        return parsedCommand;
+        return count > 0;
     }
 
     /**
-     * Check if the command byte is a valid known command.
+     * Validate an XFER_OFFER payload: [transferId:1][totalSize:4][nameLength:1][name], with a
+     * non-empty name filling the rest of the payload. Size limits are checked when the offer
+     * is handled, so they can be reported with their own status.
      */
-    private static boolean isValidCommand(byte command) {
-        switch (command) {
-            case BleProtocol.CMD_JOIN_ROOM:
-            case BleProtocol.CMD_LEAVE_ROOM:
-            case BleProtocol.CMD_MIC_MUTE:
-            case BleProtocol.CMD_MIC_UNMUTE:
-            case BleProtocol.CMD_VIDEO_MUTE:
-            case BleProtocol.CMD_VIDEO_UNMUTE:
-            case BleProtocol.CMD_PING:
-            case BleProtocol.CMD_GET_STATUS:
-                return true;
-            default:
-                return false;
+    static boolean validateXferOfferPayload(byte[] data, int offset, int length) {
+        if (length < 7) {
+            return false;
+        }
+        int nameLength = data[offset + 5] & 0xFF;
+        return nameLength > 0 && length == 6 + nameLength;
+    }
+
+    /**
+     * Verify the trailing integrity bytes of a packet: XOR checksum for v1, CRC-16 for v2.
+     */
+    private static boolean verifyChecksum(byte version, byte[] data, int offset, int length) {
+        if (version == BleProtocol.PROTOCOL_VERSION_2) {
+            int received = ((data[offset + length - 2] & 0xFF) << 8) | (data[offset + length - 1] & 0xFF);
+            return received == BleProtocol.calculateCrc16(data, offset, length - 2);
         }
+        return data[offset + length - 1] == BleProtocol.calculateChecksum(data, offset, length - 1);
+    }
+
+    /**
+     * Check if the command byte is a known command a controller may send.
+     */
+    private static boolean isValidCommand(byte command) {
+        return BleCommandRegistry.isRequest(command);
     }
 
     /**
      * Parse JOIN_ROOM payload: [linkCodeLen:1][linkCode:N][userNameLen:1][userName:M]
+     * Only the field boundaries are recorded; the strings are decoded on first access.
      *
-     * @param parsedCommand The command to populate with link code and user name
-     * @param payload The raw payload bytes
+     * @param parsedCommand The command to populate with link code and user name windows, or null
+     * @param data          The array holding the payload
+     * @param offset        Index of the first payload byte
+     * @param length        Payload length
      * @return true if parsing succeeded, false otherwise
      */
-    private static boolean parseJoinRoomPayload(ParsedCommand parsedCommand, byte[] payload) {
-        if (payload == null || payload.length < 2) {
+    static boolean parseJoinRoomPayload(ParsedCommand parsedCommand, byte[] data,
+                                        int offset, int length) {
+        if (length < 2) {
             return false;
         }
 
-        int offset = 0;
+        int end = offset + length;
+        int pos = offset;
 
         // Parse link code length
-        int linkCodeLen = payload[offset++] & 0xFF;
-        if (linkCodeLen == 0 || offset + linkCodeLen > payload.length) {
+        int linkCodeLen = data[pos++] & 0xFF;
+        if (linkCodeLen == 0 || pos + linkCodeLen > end) {
             return false;
         }
-
-        // Parse link code
-        String linkCode;
-        try {
-            linkCode = new String(payload, offset, linkCodeLen, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            return false;
-        }
-        offset += linkCodeLen;
+        int linkCodeOffset = pos;
+        pos += linkCodeLen;
 
         // Parse user name length
-        if (offset >= payload.length) {
-            return false;
-        }
-        int userNameLen = payload[offset++] & 0xFF;
-        if (userNameLen == 0 || offset + userNameLen > payload.length) {
+        if (pos >= end) {
             return false;
         }
-
-        // Parse user name
-        String userName;
-        try {
-            userName = new String(payload, offset, userNameLen, StandardCharsets.UTF_8);
-        } catch (Exception e) {
+        int userNameLen = data[pos++] & 0xFF;
+        if (userNameLen == 0 || pos + userNameLen > end) {
             return false;
         }
 
         // Validate we consumed exactly the right amount of payload
-        if (offset + userNameLen != payload.length) {
+        if (pos + userNameLen != end) {
             return false;
         }
 
-        parsedCommand.setLinkCode(linkCode);
-        parsedCommand.setUserName(userName);
+        if (parsedCommand != null) {
+            parsedCommand.setJoinRoomWindows(linkCodeOffset, linkCodeLen, pos, userNameLen);
+        }
 
         return true;
     }
@@ -169,10 +302,27 @@ public final class BleCommandParser {
         if (data == null) {
             return "null";
         }
-        StringBuilder sb = new StringBuilder();
-        for (byte b : data) {
-            sb.append(String.format("%02X ", b));
+        return toHexString(data, 0, data.length);
+    }
+
+    /**
+     * Convert part of an array to a space-separated hex string, e.g. "01 07 00 06".
+     * Uses a lookup table; no per-byte formatting.
+     */
+    public static String toHexString(byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return "";
+        }
+        char[] chars = new char[length * 3 - 1];
+        for (int i = 0; i < length; i++) {
+            int b = data[offset + i] & 0xFF;
+            int pos = i * 3;
+            chars[pos] = HEX_DIGITS[b >>> 4];
+            chars[pos + 1] = HEX_DIGITS[b & 0x0F];
+            if (i < length - 1) {
+                chars[pos + 2] = ' ';
+            }
         }
-        return sb.toString().trim();
+        return new String(chars);
     }
 }
@@ -0,0 +1,179 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * 256-entry table describing every opcode of the BLE protocol.
+ *
+ * Each opcode registers its name, payload decoder and dispatch semantics once here;
+ * BleProtocol.getCommandName() and BleCommandParser look them up with a single array
+ * index instead of walking switch statements. Execution and reply building live in
+ * BleProtocolEngine, which keeps its own opcode-indexed handler table, because they need
+ * the engine's state.
+ *
+ * Adding a command:
+ * 1. Define CMD_* in BleProtocol
+ * 2. Register it below with its decoder, flags and CommandLane
+ * 3. Register its handler (and responder, unless deferred or NO_REPLY) in BleProtocolEngine
+ */
+public final class BleCommandRegistry {
+
+    /** Controllers may send this opcode (otherwise it is server → controller only). */
+    public static final int REQUEST = 0x01;
+
+    /** Result is sent later via sendDeferredCommandResult(), not as an immediate reply. */
+    public static final int DEFERRED = 0x02;
+
+    /** May appear as an entry of a BATCH command. */
+    public static final int BATCHABLE = 0x04;
+
+    /** Never answered individually; the handler sends its own (batched) acknowledgements. */
+    public static final int NO_REPLY = 0x08;
+
+    /**
+     * Validates a command payload and records any field windows.
+     */
+    public interface PayloadDecoder {
+        /**
+         * @param out    The command to populate, or null to only validate
+         * @param data   The array holding the payload
+         * @param offset Index of the first payload byte
+         * @param length Payload length
+         * @return true if the payload is well-formed for the command
+         */
+        boolean decode(ParsedCommand out, byte[] data, int offset, int length);
+    }
+
+    /**
+     * Static description of one opcode.
+     */
+    public static final class Spec {
+        private final byte command;
+        private final String name;
+        private final PayloadDecoder decoder;
+        private final int flags;
+        private final CommandLane lane;
+
+        Spec(byte command, String name, PayloadDecoder decoder, int flags, CommandLane lane) {
+            this.command = command;
+            this.name = name;
+            this.decoder = decoder;
+            this.flags = flags;
+            this.lane = lane;
+        }
+
+        public byte getCommand() {
+            return command;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public PayloadDecoder getDecoder() {
+            return decoder;
+        }
+
+        /**
+         * Get the lane this command waits in for the command thread.
+         */
+        public CommandLane getLane() {
+            return lane;
+        }
+
+        public boolean isRequest() {
+            return (flags & REQUEST) != 0;
+        }
+
+        public boolean isDeferred() {
+            return (flags & DEFERRED) != 0;
+        }
+
+        public boolean isBatchable() {
+            return (flags & BATCHABLE) != 0;
+        }
+
+        /**
+         * Check if the command gets no immediate reply: deferred, or NO_REPLY.
+         */
+        public boolean isSilent() {
+            return (flags & (DEFERRED | NO_REPLY)) != 0;
+        }
+    }
+
+    /** Decoder for commands that carry no payload. */
+    public static final PayloadDecoder EMPTY_PAYLOAD = (out, data, offset, length) -> length == 0;
+
+    private static final Spec[] SPECS = new Spec[256];
+
+    static {
+        register(BleProtocol.CMD_JOIN_ROOM, "JOIN_ROOM", BleCommandParser::parseJoinRoomPayload,
+                REQUEST | DEFERRED | BATCHABLE, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_LEAVE_ROOM, "LEAVE_ROOM", EMPTY_PAYLOAD,
+                REQUEST | DEFERRED | BATCHABLE, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_MIC_MUTE, "MIC_MUTE", EMPTY_PAYLOAD,
+                REQUEST | BATCHABLE, CommandLane.INTERACTIVE);
+        register(BleProtocol.CMD_MIC_UNMUTE, "MIC_UNMUTE", EMPTY_PAYLOAD,
+                REQUEST | BATCHABLE, CommandLane.INTERACTIVE);
+        register(BleProtocol.CMD_VIDEO_MUTE, "VIDEO_MUTE", EMPTY_PAYLOAD,
+                REQUEST | BATCHABLE, CommandLane.INTERACTIVE);
+        register(BleProtocol.CMD_VIDEO_UNMUTE, "VIDEO_UNMUTE", EMPTY_PAYLOAD,
+                REQUEST | BATCHABLE, CommandLane.INTERACTIVE);
+        register(BleProtocol.CMD_PING, "PING",
+                (out, data, offset, length) -> length == 0 || length == BleProtocol.PING_TIMESTAMP_SIZE
+                        || length == BleProtocol.PING_REPORT_SIZE,
+                REQUEST | BATCHABLE, CommandLane.CONTROL);
+        register(BleProtocol.CMD_GET_STATUS, "GET_STATUS", EMPTY_PAYLOAD,
+                REQUEST | BATCHABLE, CommandLane.CONTROL);
+        register(BleProtocol.CMD_ROOM_JOINED, "ROOM_JOINED", EMPTY_PAYLOAD, 0, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_HELLO, "HELLO",
+                (out, data, offset, length) -> length == 2, REQUEST, CommandLane.CONTROL);
+        register(BleProtocol.CMD_BATCH, "BATCH",
+                (out, data, offset, length) -> BleCommandParser.validateBatchPayload(data, offset, length),
+                REQUEST, CommandLane.INTERACTIVE);
+        register(BleProtocol.CMD_GET_STATUS_EX, "GET_STATUS_EX", EMPTY_PAYLOAD,
+                REQUEST | BATCHABLE, CommandLane.CONTROL);
+        register(BleProtocol.CMD_STATE_CHANGED, "STATE_CHANGED", EMPTY_PAYLOAD, 0, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_GET_METRICS, "GET_METRICS",
+                (out, data, offset, length) -> length <= 1, REQUEST | BATCHABLE, CommandLane.CONTROL);
+        register(BleProtocol.CMD_XFER_OFFER, "XFER_OFFER",
+                (out, data, offset, length) -> BleCommandParser.validateXferOfferPayload(data, offset, length),
+                REQUEST, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_XFER_CHUNK, "XFER_CHUNK",
+                (out, data, offset, length) -> length > BleProtocol.XFER_CHUNK_HEADER_SIZE,
+                REQUEST | NO_REPLY, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_XFER_ACK, "XFER_ACK", EMPTY_PAYLOAD, 0, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_XFER_CANCEL, "XFER_CANCEL",
+                (out, data, offset, length) -> length == 1, REQUEST, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_JOIN_PROGRESS, "JOIN_PROGRESS", EMPTY_PAYLOAD, 0, CommandLane.BACKGROUND);
+        register(BleProtocol.CMD_NAV_KEY, "NAV_KEY",
+                (out, data, offset, length) -> length == 1, REQUEST | NO_REPLY, CommandLane.INTERACTIVE);
+        register(BleProtocol.CMD_NAV_SCROLL, "NAV_SCROLL",
+                (out, data, offset, length) -> length == 4, REQUEST | NO_REPLY, CommandLane.INTERACTIVE);
+    }
+
+    private BleCommandRegistry() {
+        // Prevent instantiation
+    }
+
+    private static void register(byte command, String name, PayloadDecoder decoder, int flags,
+                                 CommandLane lane) {
+        if (SPECS[command & 0xFF] != null) {
+            throw new IllegalStateException("Opcode registered twice: " + name);
+        }
+        SPECS[command & 0xFF] = new Spec(command, name, decoder, flags, lane);
+    }
+
+    /**
+     * Get the description of an opcode, or null if it is unknown.
+     */
+    public static Spec get(byte command) {
+        return SPECS[command & 0xFF];
+    }
+
+    /**
+     * Check if a controller may send this opcode.
+     */
+    public static boolean isRequest(byte command) {
+        Spec spec = SPECS[command & 0xFF];
+        return spec != null && spec.isRequest();
+    }
+}
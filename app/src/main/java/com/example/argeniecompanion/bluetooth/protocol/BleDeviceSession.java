@@ -0,0 +1,287 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-controller state kept by BleProtocolEngine for each connected device.
+ *
+ * Each session owns its own fragment reassembly, subscription, MTU, negotiated
+ * protocol version and outbound notification queue, so several controllers
+ * (e.g. a phone and a wrist remote) cannot corrupt each other's frames or steal
+ * each other's replies. Transport details (GATT prepared writes, characteristic
+ * values) stay in the transport.
+ *
+ * Thread Safety: The MTU, subscription, closed and scheduler lane state are safe
+ * to use from any thread, everything else is command thread only.
+ */
+class BleDeviceSession {
+
+    /**
+     * Transmits one notification packet to the session's device.
+     */
+    interface PacketSender {
+        boolean send(BleDeviceSession session, byte[] packet);
+    }
+
+    // One more than the replies that can be queued or in flight at once, so the slot
+    // taken for a new reply is never one still attached to a queued reply
+    private static final int SAMPLE_SLOTS = BleNotificationQueue.MAX_QUEUE_DEPTH + BleNotificationQueue.MAX_WINDOW + 1;
+
+    private final String address;
+    private volatile String name;
+
+    // Small id identifying the device in packet captures
+    private final int id;
+
+    private final BleFrameAssembler assembler = new BleFrameAssembler();
+    private final BleNotificationQueue notificationQueue;
+
+    private volatile boolean notificationsEnabled = false;
+    private volatile boolean closed = false;
+    private volatile boolean connectReported = false;
+    private volatile int mtu = BleProtocol.DEFAULT_ATT_MTU;
+    private volatile int notificationQueueDepth;
+
+    // Lane state for CommandScheduler: whether the last packet received was a fragment
+    // with more to follow, and how many packets wait in BACKGROUND behind fragments
+    private volatile boolean receivingFragments;
+    private final AtomicInteger pinnedPackets = new AtomicInteger();
+
+    // Devices that never send HELLO stay on v1 with no capabilities
+    private byte version = BleProtocol.PROTOCOL_VERSION;
+    private byte capabilities = 0;
+
+    // Request IDs of accepted deferred commands, by unsigned command byte, until
+    // their result is sent; NO_REQUEST_ID if none (command thread only)
+    private final int[] deferredRequestIds = new int[256];
+
+    // RTT and clock offset from timestamped PINGs; kept for the whole connection
+    private final LinkClockEstimator linkClock = new LinkClockEstimator();
+
+    // Recent sequenced commands and their replies; created on the first one, and
+    // handed on to a reconnect from the same address (command thread only)
+    private ReplayWindow replayWindow;
+
+    // Bulk transfer being received, if any (command thread only)
+    private BulkTransferReceiver.Transfer transfer;
+
+    // Timestamps of replies in the notification queue, reused round-robin; taken only
+    // for replies, never for commands without one (command thread only)
+    private final CommandMetrics.Sample[] samples = new CommandMetrics.Sample[SAMPLE_SLOTS];
+    private int nextSample;
+
+    // Pending retry/timeout checks for the notification queue
+    private ScheduledFuture<?> notificationRetry;
+    private ScheduledFuture<?> notificationTimeout;
+
+    BleDeviceSession(String address, String name, int id, PacketSender sender, LatencyHistogram sendLatency) {
+        this.address = address;
+        this.name = name;
+        this.id = id;
+        this.notificationQueue = new BleNotificationQueue(packet -> sender.send(this, packet), sendLatency);
+        Arrays.fill(deferredRequestIds, BleProtocol.NO_REQUEST_ID);
+        for (int i = 0; i < SAMPLE_SLOTS; i++) {
+            samples[i] = new CommandMetrics.Sample();
+        }
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the device name reported by the transport, or null if unknown.
+     */
+    String getName() {
+        return name;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    BleFrameAssembler getAssembler() {
+        return assembler;
+    }
+
+    BleNotificationQueue getNotificationQueue() {
+        return notificationQueue;
+    }
+
+    boolean isNotificationsEnabled() {
+        return notificationsEnabled;
+    }
+
+    void setNotificationsEnabled(boolean enabled) {
+        this.notificationsEnabled = enabled;
+    }
+
+    /**
+     * Check whether the transport reported the connection yet; until then the session
+     * only exists because a packet, MTU or subscription callback came first.
+     */
+    boolean isConnectReported() {
+        return connectReported;
+    }
+
+    void markConnectReported(String name) {
+        this.name = name;
+        this.connectReported = true;
+    }
+
+    /**
+     * Check if the device has disconnected; closed sessions accept no new responses.
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    void markClosed() {
+        this.closed = true;
+    }
+
+    int getMtu() {
+        return mtu;
+    }
+
+    void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    byte getVersion() {
+        return version;
+    }
+
+    byte getCapabilities() {
+        return capabilities;
+    }
+
+    void setNegotiated(byte version, byte capabilities) {
+        this.version = version;
+        this.capabilities = capabilities;
+    }
+
+    /**
+     * Remember the request ID of a deferred command so its result can echo it.
+     */
+    void setDeferredRequestId(byte command, int requestId) {
+        deferredRequestIds[command & 0xFF] = requestId;
+    }
+
+    /**
+     * Get the request ID remembered for a deferred command without clearing it, or NO_REQUEST_ID.
+     */
+    int getDeferredRequestId(byte command) {
+        return deferredRequestIds[command & 0xFF];
+    }
+
+    /**
+     * Take the request ID remembered for a deferred command, or NO_REQUEST_ID.
+     */
+    int takeDeferredRequestId(byte command) {
+        int requestId = deferredRequestIds[command & 0xFF];
+        deferredRequestIds[command & 0xFF] = BleProtocol.NO_REQUEST_ID;
+        return requestId;
+    }
+
+    int getNotificationQueueDepth() {
+        return notificationQueueDepth;
+    }
+
+    void updateNotificationQueueDepth() {
+        this.notificationQueueDepth = notificationQueue.getQueueDepth();
+    }
+
+    ScheduledFuture<?> getNotificationRetry() {
+        return notificationRetry;
+    }
+
+    void setNotificationRetry(ScheduledFuture<?> retry) {
+        this.notificationRetry = retry;
+    }
+
+    ScheduledFuture<?> getNotificationTimeout() {
+        return notificationTimeout;
+    }
+
+    void setNotificationTimeout(ScheduledFuture<?> timeout) {
+        this.notificationTimeout = timeout;
+    }
+
+    boolean isReceivingFragments() {
+        return receivingFragments;
+    }
+
+    void setReceivingFragments(boolean receivingFragments) {
+        this.receivingFragments = receivingFragments;
+    }
+
+    int getPinnedPackets() {
+        return pinnedPackets.get();
+    }
+
+    void pinPacket() {
+        pinnedPackets.incrementAndGet();
+    }
+
+    void unpinPacket() {
+        pinnedPackets.decrementAndGet();
+    }
+
+    /**
+     * Take the next preallocated sample for a reply about to be queued for the device.
+     */
+    CommandMetrics.Sample startSample(byte command, long receivedAtNanos) {
+        CommandMetrics.Sample sample = samples[nextSample];
+        nextSample = (nextSample + 1) % SAMPLE_SLOTS;
+        sample.start(command, receivedAtNanos);
+        return sample;
+    }
+
+    LinkClockEstimator getLinkClock() {
+        return linkClock;
+    }
+
+    ReplayWindow getReplayWindow() {
+        return replayWindow;
+    }
+
+    void setReplayWindow(ReplayWindow replayWindow) {
+        this.replayWindow = replayWindow;
+    }
+
+    BulkTransferReceiver.Transfer getTransfer() {
+        return transfer;
+    }
+
+    void setTransfer(BulkTransferReceiver.Transfer transfer) {
+        this.transfer = transfer;
+    }
+
+    /**
+     * Drop queued notifications, pending retries, any partial frame and the active transfer.
+     */
+    void reset() {
+        notificationQueue.clear();
+        notificationQueueDepth = 0;
+        if (notificationRetry != null) {
+            notificationRetry.cancel(false);
+            notificationRetry = null;
+        }
+        if (notificationTimeout != null) {
+            notificationTimeout.cancel(false);
+            notificationTimeout = null;
+        }
+        assembler.reset();
+        Arrays.fill(deferredRequestIds, BleProtocol.NO_REQUEST_ID);
+        transfer = null;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + address + " [v" + version + ", mtu=" + mtu
+                + ", notify=" + notificationsEnabled + ", " + notificationQueue + "]";
+    }
+}
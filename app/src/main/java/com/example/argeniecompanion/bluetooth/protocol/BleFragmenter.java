@@ -0,0 +1,80 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits outgoing protocol frames into MTU-sized packets.
+ *
+ * Frames that fit in a single ATT packet (MTU - 3) are sent unchanged, so controllers
+ * that never negotiate a larger MTU or send large frames see no difference.
+ * Larger frames are split into fragments:
+ * ┌─────────┬───────────────────┬────────────┐
+ * │ MARKER  │ MORE(1) | SEQ(7)  │ FRAME DATA │
+ * │  1 byte │      1 byte       │  0-N bytes │
+ * └─────────┴───────────────────┴────────────┘
+ *
+ * The receiving side reassembles them with a {@link BleFrameAssembler}.
+ */
+public final class BleFragmenter {
+
+    private BleFragmenter() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Get the largest packet that fits in one notification/write for the given MTU.
+     */
+    public static int maxPacketSize(int mtu) {
+        return Math.max(BleProtocol.DEFAULT_ATT_MTU, mtu) - BleProtocol.ATT_HEADER_SIZE;
+    }
+
+    /**
+     * Split a frame into packets that fit the given MTU.
+     *
+     * @param frame A complete protocol frame
+     * @param mtu   The negotiated ATT MTU for the target device
+     * @return The frame itself if it fits, otherwise the ordered list of fragments
+     */
+    public static List<byte[]> fragment(byte[] frame, int mtu) {
+        int maxPacket = maxPacketSize(mtu);
+        if (frame.length <= maxPacket) {
+            return Collections.singletonList(frame);
+        }
+
+        int chunkSize = maxPacket - BleProtocol.FRAGMENT_HEADER_SIZE;
+        int count = (frame.length + chunkSize - 1) / chunkSize;
+        if (count > BleProtocol.FRAGMENT_SEQ_MASK + 1) {
+            throw new IllegalArgumentException("Frame of " + frame.length
+                    + " bytes needs too many fragments for MTU " + mtu);
+        }
+
+        List<byte[]> fragments = new ArrayList<>(count);
+        for (int seq = 0, offset = 0; seq < count; seq++, offset += chunkSize) {
+            int len = Math.min(chunkSize, frame.length - offset);
+            byte[] packet = new byte[BleProtocol.FRAGMENT_HEADER_SIZE + len];
+
+            packet[0] = BleProtocol.FRAGMENT_MARKER;
+            packet[1] = (byte) seq;
+            if (seq < count - 1) {
+                packet[1] |= BleProtocol.FRAGMENT_FLAG_MORE;
+            }
+            System.arraycopy(frame, offset, packet, BleProtocol.FRAGMENT_HEADER_SIZE, len);
+
+            fragments.add(packet);
+        }
+        return fragments;
+    }
+
+    /**
+     * Check whether a received packet is a fragment rather than a complete frame.
+     * The marker alone is not enough: 0xF0 also starts 4-byte UTF-8 characters such
+     * as emoji, so the SEQ must be one a real frame can reach.
+     */
+    public static boolean isFragment(byte[] packet) {
+        return packet != null && packet.length >= BleProtocol.FRAGMENT_HEADER_SIZE
+                && packet[0] == BleProtocol.FRAGMENT_MARKER
+                && (packet[1] & BleProtocol.FRAGMENT_SEQ_MASK) <= BleProtocol.MAX_FRAGMENT_SEQ;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Reassembles fragmented frames received from a single device.
+ *
+ * One assembler is kept per connected device. Packets that are not fragments are
+ * complete frames and pass straight through. Fragments are appended in sequence order
+ * until one arrives without the MORE flag; a gap, an overflow or a new SEQ 0 drops
+ * the partial frame.
+ *
+ * Not thread-safe: feed it from a single thread.
+ */
+public class BleFrameAssembler {
+
+    private final byte[] buffer = new byte[BleProtocol.MAX_FRAME_SIZE];
+    private int length;
+    private int expectedSeq;
+    private boolean assembling;
+    private int droppedFrames;
+
+    /**
+     * Feed one received packet.
+     *
+     * @param packet The raw value written by the device
+     * @return The complete frame once available (the packet itself if it was not
+     *         fragmented), or null if more fragments are needed or the packet was dropped
+     */
+    public byte[] accept(byte[] packet) {
+        if (!BleFragmenter.isFragment(packet)) {
+            if (assembling) {
+                // A complete frame interrupted a fragmented one; the partial frame is lost
+                drop();
+            }
+            return packet;
+        }
+
+        int control = packet[1] & 0xFF;
+        int seq = control & BleProtocol.FRAGMENT_SEQ_MASK;
+        boolean more = (control & (BleProtocol.FRAGMENT_FLAG_MORE & 0xFF)) != 0;
+
+        if (seq == 0) {
+            if (assembling) {
+                drop();
+            }
+            assembling = true;
+            length = 0;
+            expectedSeq = 0;
+        } else if (!assembling || seq != expectedSeq) {
+            if (assembling) {
+                drop();
+            } else {
+                droppedFrames++;
+            }
+            return null;
+        }
+
+        int chunkLength = packet.length - BleProtocol.FRAGMENT_HEADER_SIZE;
+        if (length + chunkLength > buffer.length) {
+            drop();
+            return null;
+        }
+        System.arraycopy(packet, BleProtocol.FRAGMENT_HEADER_SIZE, buffer, length, chunkLength);
+        length += chunkLength;
+        expectedSeq++;
+
+        if (more) {
+            return null;
+        }
+
+        byte[] frame = new byte[length];
+        System.arraycopy(buffer, 0, frame, 0, length);
+        reset();
+        return frame;
+    }
+
+    /**
+     * Discard any partially assembled frame.
+     */
+    public void reset() {
+        assembling = false;
+        length = 0;
+        expectedSeq = 0;
+    }
+
+    /**
+     * Check whether a fragmented frame is in progress.
+     */
+    public boolean isAssembling() {
+        return assembling;
+    }
+
+    /**
+     * Number of partial frames discarded because of gaps, overflow or interruption.
+     */
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void drop() {
+        droppedFrames++;
+        reset();
+    }
+}
@@ -2,40 +2,34 @@ package com.example.argeniecompanion.bluetooth.protocol;
 
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattServer;
-import android.bluetooth.BluetoothGattServerCallback;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.le.AdvertiseCallback;
-import android.bluetooth.le.AdvertiseData;
-import android.bluetooth.le.AdvertiseSettings;
-import android.bluetooth.le.BluetoothLeAdvertiser;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.os.BatteryManager;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.ParcelUuid;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * BLE GATT Server implementation for receiving binary commands from a Controller app.
  *
  * This server:
- * - Advertises the service UUID for discovery
- * - Accepts write requests on the write characteristic
- * - Parses binary commands using the defined protocol
- * - Sends responses via notifications on the read characteristic
+ * - Advertises the service UUID for discovery, adapting the interval to the connection
+ *   state (see AdvertisingPolicy)
+ * - Runs a BleProtocolEngine over a BleGattTransport: controllers write commands to the
+ *   write characteristic and receive responses as notifications on the read characteristic
+ * - Serves controllers using the older text protocol (LegacyTextProtocol) on the same
+ *   characteristics, so a single server and advertiser cover both
+ * - Optionally mirrors mic/video/room flags and battery in a connectionless status beacon
+ * - Feeds the cached battery state into status responses and STATE_CHANGED pushes
  * - Delegates command handling to a BleCommandListener
  *
- * Thread Safety: All callbacks are posted to the main thread.
+ * Protocol handling (sessions, framing, dispatch, state) lives in BleProtocolEngine,
+ * which also runs off-device over TcpLoopbackTransport or InMemoryTransport.
+ *
+ * Thread Safety: BleCommandListener callbacks run on the engine's command thread;
+ * ConnectionListener and TextMessageListener callbacks are posted to the main thread.
  *
  * Usage:
  * 1. Create instance: BleGattServer server = new BleGattServer(context);
@@ -50,26 +44,20 @@ public class BleGattServer {
 
     private final Context context;
     private final Handler mainHandler;
+    private final BatteryStateProvider batteryState;
+
+    private final BleProtocolEngine engine;
+
+    private final BleAdvertiser advertiser = new BleAdvertiser(BleProtocol.SERVICE_UUID);
 
-    private BluetoothManager bluetoothManager;
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothGattServer gattServer;
-    private BluetoothLeAdvertiser advertiser;
-    private BluetoothGattCharacteristic writeCharacteristic;
-    private BluetoothGattCharacteristic readCharacteristic;
-    private BluetoothDevice connectedDevice;
 
-    private BleCommandListener commandListener;
     private ConnectionListener connectionListener;
+    private volatile boolean isRunning = false;
 
-    // State tracking
-    private boolean micMuted = false;
-    private boolean videoMuted = false;
-    private boolean inRoom = false;
-    private boolean isRunning = false;
-
-    // Buffer for prepared (long) writes
-    private final ByteArrayOutputStream preparedWriteBuffer = new ByteArrayOutputStream();
+    // Latest state as a status beacon, advertised while the beacon is enabled
+    private volatile byte[] statusBeacon;
+    private volatile boolean statusBeaconEnabled = false;
 
     /**
      * Listener for connection state changes.
@@ -87,13 +75,42 @@ public class BleGattServer {
     public BleGattServer(Context context) {
         this.context = context.getApplicationContext();
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.batteryState = new BatteryStateProvider(this.context);
+        this.engine = new BleProtocolEngine(new BleGattTransport(this.context), batteryState,
+                AndroidProtocolLogger.INSTANCE);
+        this.engine.setConnectionListener(new BleProtocolEngine.ConnectionListener() {
+            @Override
+            public void onDeviceConnected(String deviceName, String deviceAddress) {
+                advertiser.onConnectionCountChanged(engine.getConnectedDeviceCount());
+                ConnectionListener listener = connectionListener;
+                if (listener != null) {
+                    mainHandler.post(() -> listener.onDeviceConnected(deviceName, deviceAddress));
+                }
+            }
+
+            @Override
+            public void onDeviceDisconnected(String deviceAddress) {
+                advertiser.onConnectionCountChanged(engine.getConnectedDeviceCount());
+                ConnectionListener listener = connectionListener;
+                if (listener != null) {
+                    mainHandler.post(listener::onDeviceDisconnected);
+                }
+            }
+        });
+        this.engine.setStateListener((battery, mic, video, room) -> {
+            statusBeacon = BleResponseBuilder.buildStatusBeacon(battery, mic, video, room);
+            if (statusBeaconEnabled) {
+                advertiser.setStatusBeacon(statusBeacon);
+            }
+        });
+        this.batteryState.setListener((level, charging) -> engine.onBatteryChanged());
     }
 
     /**
      * Set the command listener to handle incoming commands.
      */
     public void setCommandListener(BleCommandListener listener) {
-        this.commandListener = listener;
+        engine.setCommandListener(listener);
     }
 
     /**
@@ -104,24 +121,32 @@ public class BleGattServer {
     }
 
     /**
-     * Update the mic muted state (for GET_STATUS responses).
+     * Set the listener for messages from text-protocol controllers (called on the main thread).
+     */
+    public void setTextMessageListener(BleProtocolEngine.TextMessageListener listener) {
+        engine.setTextMessageListener(listener == null ? null : (address, message) ->
+                mainHandler.post(() -> listener.onTextMessage(address, message)));
+    }
+
+    /**
+     * Update the mic muted state (for GET_STATUS responses and STATE_CHANGED pushes).
      */
     public void setMicMuted(boolean muted) {
-        this.micMuted = muted;
+        engine.setMicMuted(muted);
     }
 
     /**
-     * Update the video muted state (for GET_STATUS responses).
+     * Update the video muted state (for GET_STATUS responses and STATE_CHANGED pushes).
      */
     public void setVideoMuted(boolean muted) {
-        this.videoMuted = muted;
+        engine.setVideoMuted(muted);
     }
 
     /**
-     * Update the in-room state (for GET_STATUS responses).
+     * Update the in-room state (for GET_STATUS responses and STATE_CHANGED pushes).
      */
     public void setInRoom(boolean inRoom) {
-        this.inRoom = inRoom;
+        engine.setInRoom(inRoom);
     }
 
     /**
@@ -132,560 +157,245 @@ public class BleGattServer {
     }
 
     /**
-     * Check if a device is currently connected.
+     * Get the protocol engine behind this server.
      */
-    public boolean isConnected() {
-        return connectedDevice != null;
+    public BleProtocolEngine getEngine() {
+        return engine;
     }
 
     /**
-     * Start the BLE GATT server and begin advertising.
-     *
-     * @return true if started successfully, false otherwise
+     * Get the advertising policy, to tune the reconnect burst, idle backoff and
+     * connected mode, or to observe mode changes via its listener.
      */
-    public boolean start() {
-        if (isRunning) {
-            Log.w(TAG, "Server already running");
-            return true;
-        }
-
-        bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
-        if (bluetoothManager == null) {
-            Log.e(TAG, "BluetoothManager not available");
-            return false;
-        }
-
-        bluetoothAdapter = bluetoothManager.getAdapter();
-        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
-            Log.e(TAG, "Bluetooth not available or disabled");
-            return false;
-        }
-
-        // Create GATT server
-        gattServer = bluetoothManager.openGattServer(context, gattServerCallback);
-        if (gattServer == null) {
-            Log.e(TAG, "Failed to create GATT server");
-            return false;
-        }
-
-        // Setup service and characteristics
-        if (!setupGattService()) {
-            Log.e(TAG, "Failed to setup GATT service");
-            stop();
-            return false;
-        }
-
-        // Start advertising
-        if (!startAdvertising()) {
-            Log.e(TAG, "Failed to start advertising");
-            stop();
-            return false;
-        }
-
-        isRunning = true;
-        Log.i(TAG, "BLE GATT Server started successfully");
-        return true;
+    public AdvertisingPolicy getAdvertisingPolicy() {
+        return advertiser.getPolicy();
     }
 
     /**
-     * Stop the BLE GATT server and advertising.
+     * Set a listener for advertising mode changes, called on the main thread.
      */
-    public void stop() {
-        isRunning = false;
-
-        // Stop advertising
-        if (advertiser != null) {
-            try {
-                advertiser.stopAdvertising(advertiseCallback);
-            } catch (Exception e) {
-                Log.e(TAG, "Error stopping advertising", e);
-            }
-            advertiser = null;
-        }
-
-        // Close GATT server
-        if (gattServer != null) {
-            try {
-                gattServer.close();
-            } catch (Exception e) {
-                Log.e(TAG, "Error closing GATT server", e);
-            }
-            gattServer = null;
-        }
-
-        connectedDevice = null;
-        writeCharacteristic = null;
-        readCharacteristic = null;
-
-        Log.i(TAG, "BLE GATT Server stopped");
+    public void setAdvertisingModeListener(AdvertisingPolicy.Listener listener) {
+        advertiser.setModeListener(listener);
     }
 
     /**
-     * Send a deferred command result with full device state (mic, video, inRoom).
-     * Used for async commands like JOIN_ROOM and LEAVE_ROOM whose result is
-     * only known after the operation completes.
-     *
-     * @param command The original command byte (e.g. CMD_JOIN_ROOM)
-     * @param success true if the operation succeeded, false otherwise
+     * Advertise the mic/video/room flags and battery level as service data, so
+     * controllers can show the state by scanning, without connecting or polling.
+     * Off by default: it moves the service UUID and device name to the scan response,
+     * which only active scanners see.
      */
-    public void sendDeferredCommandResult(byte command, boolean success) {
-        byte status = success ? BleProtocol.STATUS_OK : BleProtocol.STATUS_ERROR;
-        byte[] response = BleResponseBuilder.buildCommandStatusResponse(
-                command, status, getBatteryLevel(), micMuted, videoMuted, inRoom
-        );
-        sendResponse(response);
-        Log.i(TAG, "Deferred response sent for " + BleProtocol.getCommandName(command)
-                + ": " + BleProtocol.getStatusName(status)
-                + " [mic=" + (micMuted ? "muted" : "on")
-                + ", video=" + (videoMuted ? "off" : "on")
-                + ", inRoom=" + inRoom + "]");
+    public void setStatusBeaconEnabled(boolean enabled) {
+        this.statusBeaconEnabled = enabled;
+        advertiser.setStatusBeacon(enabled ? statusBeacon : null);
     }
 
     /**
-     * Send a binary response to the connected device.
-     *
-     * @param response The response packet bytes
-     * @return true if sent successfully, false otherwise
+     * Get the histogram of time packets spend waiting for the command thread.
      */
-    public boolean sendResponse(byte[] response) {
-        if (gattServer == null || connectedDevice == null || readCharacteristic == null) {
-            Log.e(TAG, "Cannot send response: Not connected");
-            return false;
-        }
-
-        readCharacteristic.setValue(response);
-
-        boolean success = gattServer.notifyCharacteristicChanged(
-                connectedDevice,
-                readCharacteristic,
-                false
-        );
-
-        if (success) {
-            Log.d(TAG, "Response sent: " + BleCommandParser.toHexString(response));
-        } else {
-            Log.e(TAG, "Failed to send response");
-        }
-
-        return success;
+    public LatencyHistogram getQueueLatency() {
+        return engine.getQueueLatency();
     }
 
-    // ==================== Private Methods ====================
-
     /**
-     * Setup the GATT service with write and read characteristics.
+     * Get the histogram of round-trip times measured by timestamped PINGs.
      */
-    private boolean setupGattService() {
-        BluetoothGattService service = new BluetoothGattService(
-                BleProtocol.SERVICE_UUID,
-                BluetoothGattService.SERVICE_TYPE_PRIMARY
-        );
-
-        // Write Characteristic - Controller writes commands here
-        writeCharacteristic = new BluetoothGattCharacteristic(
-                BleProtocol.WRITE_CHARACTERISTIC_UUID,
-                BluetoothGattCharacteristic.PROPERTY_WRITE |
-                        BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE,
-                BluetoothGattCharacteristic.PERMISSION_WRITE
-        );
-
-        // Read/Notify Characteristic - Server sends responses here
-        readCharacteristic = new BluetoothGattCharacteristic(
-                BleProtocol.READ_CHARACTERISTIC_UUID,
-                BluetoothGattCharacteristic.PROPERTY_READ |
-                        BluetoothGattCharacteristic.PROPERTY_NOTIFY,
-                BluetoothGattCharacteristic.PERMISSION_READ
-        );
-
-        // Add CCCD for notifications
-        BluetoothGattDescriptor cccd = new BluetoothGattDescriptor(
-                BleProtocol.CCCD_UUID,
-                BluetoothGattDescriptor.PERMISSION_READ | BluetoothGattDescriptor.PERMISSION_WRITE
-        );
-        readCharacteristic.addDescriptor(cccd);
-
-        service.addCharacteristic(writeCharacteristic);
-        service.addCharacteristic(readCharacteristic);
-
-        return gattServer.addService(service);
+    public LatencyHistogram getRoundTripLatency() {
+        return engine.getRoundTripLatency();
     }
 
     /**
-     * Start BLE advertising.
+     * Get the RTT and clock offset estimate of a connected controller, or null if it
+     * is not connected.
      */
-    private boolean startAdvertising() {
-        advertiser = bluetoothAdapter.getBluetoothLeAdvertiser();
-        if (advertiser == null) {
-            Log.e(TAG, "Advertiser not available");
-            return false;
-        }
-
-        AdvertiseSettings settings = new AdvertiseSettings.Builder()
-                .setAdvertiseMode(AdvertiseSettings.ADVERTISE_MODE_BALANCED)
-                .setConnectable(true)
-                .setTimeout(0)
-                .setTxPowerLevel(AdvertiseSettings.ADVERTISE_TX_POWER_MEDIUM)
-                .build();
-
-        AdvertiseData data = new AdvertiseData.Builder()
-                .setIncludeDeviceName(true)
-                .addServiceUuid(new ParcelUuid(BleProtocol.SERVICE_UUID))
-                .build();
-
-        advertiser.startAdvertising(settings, data, advertiseCallback);
-        return true;
+    public LinkClockEstimator getLinkClock(String address) {
+        return engine.getLinkClock(address);
     }
 
     /**
-     * Get the current battery level.
+     * Get the histogram of time packets of one priority lane spend waiting for the
+     * command thread.
      */
-    private int getBatteryLevel() {
-        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = context.registerReceiver(null, filter);
-
-        if (batteryStatus == null) {
-            return 50; // Default if unknown
-        }
-
-        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-
-        if (level < 0 || scale <= 0) {
-            return 50; // Default if unknown
-        }
-
-        return (int) ((level / (float) scale) * 100);
+    public LatencyHistogram getQueueLatency(CommandLane lane) {
+        return engine.getQueueLatency(lane);
     }
 
     /**
-     * Process an incoming binary command.
+     * Get the histogram of time spent processing a complete command frame.
      */
-    private void processCommand(byte[] data) {
-        Log.d(TAG, "Received data: " + BleCommandParser.toHexString(data));
-
-        ParsedCommand parsed = BleCommandParser.parse(data);
-        Log.d(TAG, "Parsed: " + parsed);
-
-        if (!parsed.isValid()) {
-            // Send error response
-            byte[] errorResponse = BleResponseBuilder.buildAckResponse(
-                    parsed.getCommand(),
-                    parsed.getErrorStatus()
-            );
-            sendResponse(errorResponse);
-            return;
-        }
-
-        // Handle the command
-        byte responseStatus = executeCommand(parsed);
-
-        // JOIN_ROOM and LEAVE_ROOM are async — response will be sent later
-        // via sendDeferredCommandResult() when the operation actually completes.
-        byte cmd = parsed.getCommand();
-        if (cmd == BleProtocol.CMD_JOIN_ROOM || cmd == BleProtocol.CMD_LEAVE_ROOM) {
-            // Only send an immediate error if the command was rejected synchronously
-            // (e.g. already in room, or not in room). STATUS_OK means async processing started.
-            if (responseStatus != BleProtocol.STATUS_OK) {
-                sendResponse(BleResponseBuilder.buildAckResponse(cmd, responseStatus));
-            }
-            return;
-        }
-
-        // Send appropriate response for synchronous commands
-        byte[] response;
-        if (cmd == BleProtocol.CMD_PING) {
-            response = BleResponseBuilder.buildPongResponse();
-        } else {
-            // All other synchronous commands (GET_STATUS, MIC_MUTE/UNMUTE, VIDEO_MUTE/UNMUTE)
-            // respond with full device state so the controller always knows current state
-            response = BleResponseBuilder.buildCommandStatusResponse(
-                    cmd,
-                    responseStatus,
-                    getBatteryLevel(),
-                    micMuted,
-                    videoMuted,
-                    inRoom
-            );
-        }
-
-        sendResponse(response);
+    public LatencyHistogram getProcessingLatency() {
+        return engine.getProcessingLatency();
     }
 
     /**
-     * Execute a parsed command and return the status.
+     * Get the per-command latency histograms (queue, handler, send and total).
      */
-    private byte executeCommand(ParsedCommand parsed) {
-        byte command = parsed.getCommand();
-        Log.i(TAG, "Executing command: " + BleProtocol.getCommandName(command));
-
-        switch (command) {
-            case BleProtocol.CMD_JOIN_ROOM:
-                return handleJoinRoom(parsed);
-
-            case BleProtocol.CMD_LEAVE_ROOM:
-                return handleLeaveRoom();
-
-            case BleProtocol.CMD_MIC_MUTE:
-                return handleMicMute();
-
-            case BleProtocol.CMD_MIC_UNMUTE:
-                return handleMicUnmute();
-
-            case BleProtocol.CMD_VIDEO_MUTE:
-                return handleVideoMute();
-
-            case BleProtocol.CMD_VIDEO_UNMUTE:
-                return handleVideoUnmute();
-
-            case BleProtocol.CMD_PING:
-                // PING always succeeds
-                return BleProtocol.STATUS_OK;
-
-            case BleProtocol.CMD_GET_STATUS:
-                // GET_STATUS always succeeds
-                return BleProtocol.STATUS_OK;
-
-            default:
-                return BleProtocol.STATUS_INVALID_COMMAND;
-        }
+    public CommandMetrics getCommandMetrics() {
+        return engine.getCommandMetrics();
     }
 
-    private byte handleJoinRoom(ParsedCommand parsed) {
-        if (inRoom) {
-            return BleProtocol.STATUS_ALREADY_IN_ROOM;
-        }
-
-        if (commandListener != null) {
-            // onJoinRoom kicks off the async join flow.
-            // The actual result will be sent later via sendDeferredCommandResult().
-            commandListener.onJoinRoom(
-                    parsed.getLinkCode(),
-                    parsed.getUserName()
-            );
-        }
+    /**
+     * Get the histogram of time from queueing a notification until the stack reports it sent.
+     */
+    public LatencyHistogram getNotificationSendLatency() {
+        return engine.getNotificationSendLatency();
+    }
 
-        // STATUS_OK here means "accepted for processing" — processCommand() will
-        // not send a response for this; the deferred response comes later.
-        return BleProtocol.STATUS_OK;
+    /**
+     * Get the number of notification packets, across all devices, waiting for a
+     * free slot in their window.
+     */
+    public int getNotificationQueueDepth() {
+        return engine.getNotificationQueueDepth();
     }
 
-    private byte handleLeaveRoom() {
-        if (!inRoom) {
-            return BleProtocol.STATUS_NOT_CONNECTED;
-        }
+    /**
+     * Get the ring buffer of raw inbound and outbound packets.
+     */
+    public PacketCapture getPacketCapture() {
+        return engine.getPacketCapture();
+    }
 
-        if (commandListener != null) {
-            commandListener.onLeaveRoom();
-        }
+    /**
+     * Log the captured packets as hex, oldest first.
+     */
+    public void dumpPacketCapture() {
+        engine.dumpPacketCapture();
+    }
 
-        inRoom = false;
-        return BleProtocol.STATUS_OK;
+    /**
+     * Write the captured packets in the PacketCapture export format, e.g. to a file
+     * that PacketReplay or the replay benchmark can load. The stream is not closed.
+     */
+    public void exportPacketCapture(OutputStream out) throws IOException {
+        engine.exportPacketCapture(out);
     }
 
-    private byte handleMicMute() {
-        if (commandListener != null) {
-            commandListener.onMicMute();
-        }
-        micMuted = true;
-        return BleProtocol.STATUS_OK;
+    /**
+     * Set how many notifications may be in flight per device before waiting for
+     * onNotificationSent(). Defaults to 1, which is what every Android BLE stack
+     * handles reliably.
+     */
+    public void setNotificationWindow(int window) {
+        engine.setNotificationWindow(window);
     }
 
-    private byte handleMicUnmute() {
-        if (commandListener != null) {
-            commandListener.onMicUnmute();
-        }
-        micMuted = false;
-        return BleProtocol.STATUS_OK;
+    /**
+     * Set the listener for completed bulk transfers. Called on the command thread,
+     * so hand heavy work off to another thread.
+     */
+    public void setBulkTransferListener(BulkTransferReceiver.Listener listener) {
+        engine.setBulkTransferListener(listener);
     }
 
-    private byte handleVideoMute() {
-        if (commandListener != null) {
-            commandListener.onVideoMute();
-        }
-        videoMuted = true;
-        return BleProtocol.STATUS_OK;
+    /**
+     * Get the bulk transfer receiver, e.g. to read its throughput counters.
+     */
+    public BulkTransferReceiver getBulkTransferReceiver() {
+        return engine.getBulkTransferReceiver();
     }
 
-    private byte handleVideoUnmute() {
-        if (commandListener != null) {
-            commandListener.onVideoUnmute();
-        }
-        videoMuted = false;
-        return BleProtocol.STATUS_OK;
+    /**
+     * Check if at least one device is currently connected.
+     */
+    public boolean isConnected() {
+        return engine.isConnected();
     }
 
-    // ==================== Callbacks ====================
+    /**
+     * Get the number of currently connected devices.
+     */
+    public int getConnectedDeviceCount() {
+        return engine.getConnectedDeviceCount();
+    }
 
-    private final AdvertiseCallback advertiseCallback = new AdvertiseCallback() {
-        @Override
-        public void onStartSuccess(AdvertiseSettings settingsInEffect) {
-            Log.i(TAG, "BLE advertising started successfully");
+    /**
+     * Start the BLE GATT server and begin advertising.
+     *
+     * @return true if started successfully, false otherwise
+     */
+    public boolean start() {
+        if (isRunning) {
+            Log.w(TAG, "Server already running");
+            return true;
         }
 
-        @Override
-        public void onStartFailure(int errorCode) {
-            Log.e(TAG, "BLE advertising failed: " + getAdvertiseErrorString(errorCode));
-            isRunning = false;
+        BluetoothManager bluetoothManager =
+                (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+        if (bluetoothManager == null) {
+            Log.e(TAG, "BluetoothManager not available");
+            return false;
         }
 
-        private String getAdvertiseErrorString(int errorCode) {
-            switch (errorCode) {
-                case ADVERTISE_FAILED_DATA_TOO_LARGE:
-                    return "DATA_TOO_LARGE";
-                case ADVERTISE_FAILED_TOO_MANY_ADVERTISERS:
-                    return "TOO_MANY_ADVERTISERS";
-                case ADVERTISE_FAILED_ALREADY_STARTED:
-                    return "ALREADY_STARTED";
-                case ADVERTISE_FAILED_INTERNAL_ERROR:
-                    return "INTERNAL_ERROR";
-                case ADVERTISE_FAILED_FEATURE_UNSUPPORTED:
-                    return "FEATURE_UNSUPPORTED";
-                default:
-                    return "UNKNOWN(" + errorCode + ")";
-            }
+        bluetoothAdapter = bluetoothManager.getAdapter();
+        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+            Log.e(TAG, "Bluetooth not available or disabled");
+            return false;
         }
-    };
-
-    private final BluetoothGattServerCallback gattServerCallback = new BluetoothGattServerCallback() {
-
-        @Override
-        public void onConnectionStateChange(BluetoothDevice device, int status, int newState) {
-            if (newState == BluetoothGatt.STATE_CONNECTED) {
-                connectedDevice = device;
-                String deviceName = device.getName();
-                String deviceAddress = device.getAddress();
-
-                Log.i(TAG, "Device connected: " + deviceName + " [" + deviceAddress + "]");
-
-                if (connectionListener != null) {
-                    mainHandler.post(() ->
-                            connectionListener.onDeviceConnected(deviceName, deviceAddress)
-                    );
-                }
-
-            } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
-                Log.i(TAG, "Device disconnected");
-                connectedDevice = null;
-                synchronized (preparedWriteBuffer) {
-                    preparedWriteBuffer.reset();
-                }
 
-                if (connectionListener != null) {
-                    mainHandler.post(() -> connectionListener.onDeviceDisconnected());
-                }
-            }
+        if (!engine.start()) {
+            Log.e(TAG, "Failed to start protocol engine");
+            stop();
+            return false;
         }
 
-        @Override
-        public void onCharacteristicWriteRequest(BluetoothDevice device,
-                                                 int requestId,
-                                                 BluetoothGattCharacteristic characteristic,
-                                                 boolean preparedWrite,
-                                                 boolean responseNeeded,
-                                                 int offset,
-                                                 byte[] value) {
-
-            if (BleProtocol.WRITE_CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
-                if (preparedWrite) {
-                    // Buffer the chunk — will be assembled in onExecuteWrite()
-                    synchronized (preparedWriteBuffer) {
-                        preparedWriteBuffer.write(value, 0, value.length);
-                    }
-                    Log.d(TAG, "Buffered prepared write chunk: " + BleCommandParser.toHexString(value));
-                } else {
-                    // Single (non-prepared) write — process immediately
-                    mainHandler.post(() -> processCommand(value));
-                }
-
-                // Send GATT response if needed
-                if (responseNeeded) {
-                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
-                }
-            } else {
-                if (responseNeeded) {
-                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
-                }
-            }
+        // Start advertising
+        if (!advertiser.start(bluetoothAdapter)) {
+            Log.e(TAG, "Failed to start advertising");
+            stop();
+            return false;
         }
 
-        @Override
-        public void onExecuteWrite(BluetoothDevice device, int requestId, boolean execute) {
-            byte[] assembled;
-            synchronized (preparedWriteBuffer) {
-                assembled = preparedWriteBuffer.toByteArray();
-                preparedWriteBuffer.reset();
-            }
+        batteryState.start();
 
-            if (execute && assembled.length > 0) {
-                Log.d(TAG, "Execute write — assembled " + assembled.length + " bytes");
-                mainHandler.post(() -> processCommand(assembled));
-            } else {
-                Log.d(TAG, "Execute write cancelled or empty buffer");
-            }
+        isRunning = true;
+        Log.i(TAG, "BLE GATT Server started successfully");
+        return true;
+    }
 
-            gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, 0, null);
-        }
+    /**
+     * Stop the BLE GATT server and advertising.
+     */
+    public void stop() {
+        isRunning = false;
+        batteryState.stop();
 
-        @Override
-        public void onCharacteristicReadRequest(BluetoothDevice device,
-                                                int requestId,
-                                                int offset,
-                                                BluetoothGattCharacteristic characteristic) {
+        // Stop advertising
+        advertiser.stop();
 
-            if (BleProtocol.READ_CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
-                byte[] value = characteristic.getValue();
-                if (value == null) {
-                    value = new byte[0];
-                }
-                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
-            } else {
-                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
-            }
-        }
+        engine.stop();
 
-        @Override
-        public void onDescriptorWriteRequest(BluetoothDevice device,
-                                             int requestId,
-                                             BluetoothGattDescriptor descriptor,
-                                             boolean preparedWrite,
-                                             boolean responseNeeded,
-                                             int offset,
-                                             byte[] value) {
-
-            if (BleProtocol.CCCD_UUID.equals(descriptor.getUuid())) {
-                if (java.util.Arrays.equals(value, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE)) {
-                    Log.d(TAG, "Notifications enabled by client");
-                } else if (java.util.Arrays.equals(value, BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE)) {
-                    Log.d(TAG, "Notifications disabled by client");
-                }
+        Log.i(TAG, "BLE GATT Server stopped");
+    }
 
-                if (responseNeeded) {
-                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
-                }
-            } else {
-                if (responseNeeded) {
-                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
-                }
-            }
-        }
+    /**
+     * Send a deferred command result with full device state (mic, video, inRoom)
+     * to every connected device, so all controllers see the same outcome.
+     * Used for async commands like JOIN_ROOM and LEAVE_ROOM whose result is
+     * only known after the operation completes.
+     *
+     * @param command The original command byte (e.g. CMD_JOIN_ROOM)
+     * @param success true if the operation succeeded, false otherwise
+     */
+    public void sendDeferredCommandResult(byte command, boolean success) {
+        engine.sendDeferredCommandResult(command, success);
+    }
 
-        @Override
-        public void onDescriptorReadRequest(BluetoothDevice device,
-                                            int requestId,
-                                            int offset,
-                                            BluetoothGattDescriptor descriptor) {
-
-            if (BleProtocol.CCCD_UUID.equals(descriptor.getUuid())) {
-                byte[] value = BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
-                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
-            } else {
-                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
-            }
-        }
+    /**
+     * Report that the join in progress entered a phase (one of BleProtocol.JOIN_PHASE_*),
+     * as a JOIN_PROGRESS notification to controllers that support it.
+     */
+    public void sendJoinProgress(int phase) {
+        engine.sendJoinProgress(phase);
+    }
 
-        @Override
-        public void onMtuChanged(BluetoothDevice device, int mtu) {
-            Log.d(TAG, "MTU changed to: " + mtu);
-        }
-    };
+    /**
+     * Send a binary response to every connected device.
+     * Must be called on the command thread.
+     *
+     * @param response The response packet bytes
+     * @return true if queued for at least one device, false otherwise
+     */
+    public boolean sendResponse(byte[] response) {
+        return engine.sendResponse(response);
+    }
 }
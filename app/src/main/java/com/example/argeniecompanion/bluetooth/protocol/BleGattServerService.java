@@ -16,6 +16,9 @@ import androidx.core.app.NotificationCompat;
 
 import com.example.argeniecompanion.ui.MainActivity;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * Android Service that wraps BleGattServer for background operation.
  *
@@ -118,6 +121,22 @@ public class BleGattServerService extends Service {
                     commandListener.onVideoUnmute();
                 }
             }
+
+            @Override
+            public void onNavKey(int key) {
+                Log.d(TAG, "NAV_KEY: " + key);
+                if (commandListener != null) {
+                    commandListener.onNavKey(key);
+                }
+            }
+
+            @Override
+            public void onNavScroll(int dx, int dy) {
+                Log.d(TAG, "NAV_SCROLL: " + dx + "," + dy);
+                if (commandListener != null) {
+                    commandListener.onNavScroll(dx, dy);
+                }
+            }
         });
 
         // Forward connection events
@@ -134,7 +153,10 @@ public class BleGattServerService extends Service {
             @Override
             public void onDeviceDisconnected() {
                 Log.i(TAG, "Device disconnected");
-                updateNotification("Waiting for connection...");
+                int remaining = gattServer.getConnectedDeviceCount();
+                updateNotification(remaining > 0
+                        ? "Connected to " + remaining + (remaining == 1 ? " device" : " devices")
+                        : "Waiting for connection...");
                 if (connectionListener != null) {
                     connectionListener.onDeviceDisconnected();
                 }
@@ -226,6 +248,24 @@ public class BleGattServerService extends Service {
         }
     }
 
+    /**
+     * Set the listener for messages from text-protocol controllers (called on the main thread).
+     */
+    public void setTextMessageListener(BleProtocolEngine.TextMessageListener listener) {
+        if (gattServer != null) {
+            gattServer.setTextMessageListener(listener);
+        }
+    }
+
+    /**
+     * Advertise mic/video/room state and battery as a connectionless status beacon.
+     */
+    public void setStatusBeaconEnabled(boolean enabled) {
+        if (gattServer != null) {
+            gattServer.setStatusBeaconEnabled(enabled);
+        }
+    }
+
     /**
      * Send a deferred command result with full device state.
      * Call this when an async operation (JOIN_ROOM, LEAVE_ROOM) completes.
@@ -239,6 +279,18 @@ public class BleGattServerService extends Service {
         }
     }
 
+    /**
+     * Report that the join in progress entered a phase, so controllers can show
+     * progress and hold off retrying JOIN_ROOM. Call at the start of each phase.
+     *
+     * @param phase One of BleProtocol.JOIN_PHASE_*
+     */
+    public void sendJoinProgress(int phase) {
+        if (gattServer != null) {
+            gattServer.sendJoinProgress(phase);
+        }
+    }
+
     /**
      * Check if a device is connected.
      */
@@ -253,6 +305,19 @@ public class BleGattServerService extends Service {
         return gattServer != null && gattServer.isRunning();
     }
 
+    /**
+     * Export the BLE packet capture (see PacketCapture for the format).
+     *
+     * @return false if the server is not running
+     */
+    public boolean exportPacketCapture(OutputStream out) throws IOException {
+        if (gattServer == null) {
+            return false;
+        }
+        gattServer.exportPacketCapture(out);
+        return true;
+    }
+
     // ==================== Notification Methods ====================
 
     private void createNotificationChannel() {
@@ -0,0 +1,324 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattServer;
+import android.bluetooth.BluetoothGattServerCallback;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothStatusCodes;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BleTransport over an Android GATT server.
+ *
+ * Controllers write packets to the write characteristic (directly or as prepared
+ * writes, which are assembled here) and receive packets as notifications on the
+ * read characteristic. Subscription follows the CCCD, and completion follows
+ * onNotificationSent().
+ *
+ * Thread Safety: GATT callbacks arrive on a binder thread; send() is called on
+ * the engine's command thread.
+ */
+@SuppressLint("MissingPermission")
+public class BleGattTransport implements BleTransport {
+
+    private static final String TAG = "BleGattTransport";
+
+    /**
+     * GATT state of one connected device.
+     */
+    private static final class DeviceEntry {
+        final BluetoothDevice device;
+
+        // Buffer for prepared (long) writes; binder thread only
+        final ByteArrayOutputStream preparedWrite = new ByteArrayOutputStream();
+
+        // Last notified value, returned to read requests on the read characteristic
+        volatile byte[] lastNotifiedValue = new byte[0];
+
+        volatile boolean notificationsEnabled;
+
+        DeviceEntry(BluetoothDevice device) {
+            this.device = device;
+        }
+    }
+
+    private final Context context;
+
+    private BluetoothGattServer gattServer;
+    private BluetoothGattCharacteristic readCharacteristic;
+    private volatile Callback callback;
+
+    private final Map<String, DeviceEntry> devices = new ConcurrentHashMap<>();
+
+    public BleGattTransport(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public boolean start(Callback callback) {
+        BluetoothManager bluetoothManager =
+                (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+        if (bluetoothManager == null) {
+            Log.e(TAG, "BluetoothManager not available");
+            return false;
+        }
+        this.callback = callback;
+
+        // Create GATT server
+        gattServer = bluetoothManager.openGattServer(context, gattServerCallback);
+        if (gattServer == null) {
+            Log.e(TAG, "Failed to create GATT server");
+            return false;
+        }
+
+        // Setup service and characteristics
+        if (!setupGattService()) {
+            Log.e(TAG, "Failed to setup GATT service");
+            stop();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        if (gattServer != null) {
+            try {
+                gattServer.close();
+            } catch (Exception e) {
+                Log.e(TAG, "Error closing GATT server", e);
+            }
+            gattServer = null;
+        }
+
+        readCharacteristic = null;
+        devices.clear();
+        callback = null;
+    }
+
+    @Override
+    public boolean send(String address, byte[] packet) {
+        BluetoothGattServer server = gattServer;
+        BluetoothGattCharacteristic characteristic = readCharacteristic;
+        DeviceEntry entry = devices.get(address);
+        if (server == null || characteristic == null || entry == null) {
+            return false;
+        }
+
+        entry.lastNotifiedValue = packet;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            // Passes the value directly instead of mutating the shared characteristic
+            return server.notifyCharacteristicChanged(entry.device, characteristic, false, packet)
+                    == BluetoothStatusCodes.SUCCESS;
+        }
+        characteristic.setValue(packet);
+        return server.notifyCharacteristicChanged(entry.device, characteristic, false);
+    }
+
+    /**
+     * Setup the GATT service with write and read characteristics.
+     */
+    private boolean setupGattService() {
+        BluetoothGattService service = new BluetoothGattService(
+                BleProtocol.SERVICE_UUID,
+                BluetoothGattService.SERVICE_TYPE_PRIMARY
+        );
+
+        // Write Characteristic - Controller writes commands here
+        BluetoothGattCharacteristic writeCharacteristic = new BluetoothGattCharacteristic(
+                BleProtocol.WRITE_CHARACTERISTIC_UUID,
+                BluetoothGattCharacteristic.PROPERTY_WRITE |
+                        BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE,
+                BluetoothGattCharacteristic.PERMISSION_WRITE
+        );
+
+        // Read/Notify Characteristic - Server sends responses here
+        readCharacteristic = new BluetoothGattCharacteristic(
+                BleProtocol.READ_CHARACTERISTIC_UUID,
+                BluetoothGattCharacteristic.PROPERTY_READ |
+                        BluetoothGattCharacteristic.PROPERTY_NOTIFY,
+                BluetoothGattCharacteristic.PERMISSION_READ
+        );
+
+        // Add CCCD for notifications
+        BluetoothGattDescriptor cccd = new BluetoothGattDescriptor(
+                BleProtocol.CCCD_UUID,
+                BluetoothGattDescriptor.PERMISSION_READ | BluetoothGattDescriptor.PERMISSION_WRITE
+        );
+        readCharacteristic.addDescriptor(cccd);
+
+        service.addCharacteristic(writeCharacteristic);
+        service.addCharacteristic(readCharacteristic);
+
+        return gattServer.addService(service);
+    }
+
+    /**
+     * Get the entry for a device, creating one if a request arrived before
+     * the connection callback.
+     */
+    private DeviceEntry getEntry(BluetoothDevice device) {
+        return devices.computeIfAbsent(device.getAddress(), address -> new DeviceEntry(device));
+    }
+
+    // ==================== Callbacks ====================
+
+    private final BluetoothGattServerCallback gattServerCallback = new BluetoothGattServerCallback() {
+
+        @Override
+        public void onConnectionStateChange(BluetoothDevice device, int status, int newState) {
+            Callback cb = callback;
+            if (cb == null) {
+                return;
+            }
+
+            if (newState == BluetoothGatt.STATE_CONNECTED) {
+                // A reconnect from the same address starts over with a fresh entry
+                devices.put(device.getAddress(), new DeviceEntry(device));
+                cb.onDeviceConnected(device.getAddress(), device.getName());
+            } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
+                devices.remove(device.getAddress());
+                cb.onDeviceDisconnected(device.getAddress());
+            }
+        }
+
+        @Override
+        public void onCharacteristicWriteRequest(BluetoothDevice device,
+                                                 int requestId,
+                                                 BluetoothGattCharacteristic characteristic,
+                                                 boolean preparedWrite,
+                                                 boolean responseNeeded,
+                                                 int offset,
+                                                 byte[] value) {
+
+            Callback cb = callback;
+            if (cb != null && BleProtocol.WRITE_CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
+                if (preparedWrite) {
+                    // Buffer the chunk — will be assembled in onExecuteWrite()
+                    getEntry(device).preparedWrite.write(value, 0, value.length);
+                } else {
+                    // Single (non-prepared) write — a complete frame or one fragment of it
+                    cb.onPacketReceived(device.getAddress(), value, System.nanoTime());
+                }
+
+                // Send GATT response if needed
+                if (responseNeeded) {
+                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
+                }
+            } else {
+                if (responseNeeded) {
+                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
+                }
+            }
+        }
+
+        @Override
+        public void onExecuteWrite(BluetoothDevice device, int requestId, boolean execute) {
+            DeviceEntry entry = getEntry(device);
+            byte[] assembled = entry.preparedWrite.toByteArray();
+            entry.preparedWrite.reset();
+
+            Callback cb = callback;
+            if (cb != null && execute && assembled.length > 0) {
+                Log.d(TAG, "Execute write — assembled " + assembled.length + " bytes");
+                cb.onPacketReceived(device.getAddress(), assembled, System.nanoTime());
+            } else {
+                Log.d(TAG, "Execute write cancelled or empty buffer");
+            }
+
+            gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, 0, null);
+        }
+
+        @Override
+        public void onCharacteristicReadRequest(BluetoothDevice device,
+                                                int requestId,
+                                                int offset,
+                                                BluetoothGattCharacteristic characteristic) {
+
+            if (BleProtocol.READ_CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
+                byte[] value = getEntry(device).lastNotifiedValue;
+                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
+            } else {
+                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
+            }
+        }
+
+        @Override
+        public void onDescriptorWriteRequest(BluetoothDevice device,
+                                             int requestId,
+                                             BluetoothGattDescriptor descriptor,
+                                             boolean preparedWrite,
+                                             boolean responseNeeded,
+                                             int offset,
+                                             byte[] value) {
+
+            if (BleProtocol.CCCD_UUID.equals(descriptor.getUuid())) {
+                DeviceEntry entry = getEntry(device);
+                Callback cb = callback;
+                if (Arrays.equals(value, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE)) {
+                    entry.notificationsEnabled = true;
+                    if (cb != null) {
+                        cb.onSubscriptionChanged(device.getAddress(), true);
+                    }
+                } else if (Arrays.equals(value, BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE)) {
+                    entry.notificationsEnabled = false;
+                    if (cb != null) {
+                        cb.onSubscriptionChanged(device.getAddress(), false);
+                    }
+                }
+
+                if (responseNeeded) {
+                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
+                }
+            } else {
+                if (responseNeeded) {
+                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
+                }
+            }
+        }
+
+        @Override
+        public void onDescriptorReadRequest(BluetoothDevice device,
+                                            int requestId,
+                                            int offset,
+                                            BluetoothGattDescriptor descriptor) {
+
+            if (BleProtocol.CCCD_UUID.equals(descriptor.getUuid())) {
+                byte[] value = getEntry(device).notificationsEnabled
+                        ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE
+                        : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
+                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
+            } else {
+                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED, offset, null);
+            }
+        }
+
+        @Override
+        public void onNotificationSent(BluetoothDevice device, int status) {
+            Callback cb = callback;
+            if (cb != null) {
+                cb.onPacketSent(device.getAddress(), status == BluetoothGatt.GATT_SUCCESS);
+            }
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothDevice device, int mtu) {
+            Callback cb = callback;
+            if (cb != null) {
+                cb.onMtuChanged(device.getAddress(), mtu);
+            }
+        }
+    };
+}
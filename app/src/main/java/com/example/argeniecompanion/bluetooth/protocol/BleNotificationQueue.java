@@ -0,0 +1,279 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Flow-controlled queue of outbound notification packets.
+ *
+ * The Android BLE stack can only have a limited number of notifications outstanding;
+ * anything sent before onNotificationSent() arrives may be rejected or, on the legacy
+ * API, overwrite the characteristic value of the packet still being sent. This queue
+ * hands packets to a {@link Sender} one window at a time and only moves on when the
+ * caller reports completion via {@link #onSent(boolean)}.
+ *
+ * Thread Safety: Not thread-safe. BleGattServer only uses it on the command thread.
+ */
+public class BleNotificationQueue {
+
+    /** Default number of notifications allowed in flight at once. */
+    public static final int DEFAULT_WINDOW = 1;
+
+    /** Upper bound for the in-flight window. */
+    public static final int MAX_WINDOW = 8;
+
+    /** Packets queued beyond this depth are dropped. */
+    public static final int MAX_QUEUE_DEPTH = 64;
+
+    /** Attempts to hand one packet to the sender before it is dropped. */
+    public static final int MAX_SEND_ATTEMPTS = 3;
+
+    /**
+     * Transmits a single packet. Implementations return false when the stack
+     * refused the packet (e.g. busy); the queue will retry it later.
+     */
+    public interface Sender {
+        boolean send(byte[] packet);
+    }
+
+    /**
+     * Told when a packet that was queued with a token has been sent.
+     */
+    public interface DeliveryListener {
+        void onDelivered(Object token, long sentAtNanos);
+    }
+
+    private static final class Entry {
+        final byte[] packet;
+        final Object token;
+        final long enqueuedAtNanos;
+        // Fragmented frame the packet belongs to, NO_FRAME for a packet on its own
+        final int frame;
+        long sentAtNanos;
+
+        Entry(byte[] packet, Object token, long enqueuedAtNanos, int frame) {
+            this.packet = packet;
+            this.token = token;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+            this.frame = frame;
+        }
+    }
+
+    private static final int NO_FRAME = 0;
+
+    private final Sender sender;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final ArrayDeque<Entry> inFlight = new ArrayDeque<>();
+
+    // Time from enqueue until the stack confirmed the notification was sent
+    private final LatencyHistogram sendLatency;
+
+    private int window = DEFAULT_WINDOW;
+    private int failedAttempts;
+    private int maxQueueDepth;
+    private long droppedPackets;
+    private int lastFrame = NO_FRAME;
+    private DeliveryListener deliveryListener;
+
+    public BleNotificationQueue(Sender sender) {
+        this(sender, new LatencyHistogram());
+    }
+
+    /**
+     * Create a queue that records send latency into a shared histogram,
+     * e.g. one aggregated across all connected devices.
+     */
+    public BleNotificationQueue(Sender sender, LatencyHistogram sendLatency) {
+        this.sender = sender;
+        this.sendLatency = sendLatency;
+    }
+
+    /**
+     * Set how many notifications may be outstanding at once.
+     *
+     * @param window Number of packets in flight, clamped to 1..MAX_WINDOW
+     */
+    public void setWindow(int window) {
+        this.window = Math.max(1, Math.min(MAX_WINDOW, window));
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void setDeliveryListener(DeliveryListener listener) {
+        this.deliveryListener = listener;
+    }
+
+    /**
+     * Queue a packet. Call {@link #pump()} afterwards to start sending, so a burst of
+     * fragments can be queued before the first one goes out.
+     *
+     * @return false if the queue is full and the packet was dropped
+     */
+    public boolean enqueue(byte[] packet) {
+        return enqueue(packet, null);
+    }
+
+    /**
+     * Queue a packet and hand {@code token} to the DeliveryListener once it is sent.
+     *
+     * @return false if the queue is full and the packet was dropped
+     */
+    public boolean enqueue(byte[] packet, Object token) {
+        if (pending.size() >= MAX_QUEUE_DEPTH) {
+            droppedPackets++;
+            return false;
+        }
+        add(packet, token, NO_FRAME);
+        return true;
+    }
+
+    /**
+     * Queue all fragments of a frame, or none of them if they do not all fit: the
+     * receiver could never reassemble a frame with fragments missing. For the same
+     * reason, once one fragment is given up the frame's remaining fragments are dropped.
+     *
+     * @param token Handed to the DeliveryListener once the last packet is sent
+     * @return false if the queue is too full and the packets were dropped
+     */
+    public boolean enqueueAll(List<byte[]> packets, Object token) {
+        if (pending.size() + packets.size() > MAX_QUEUE_DEPTH) {
+            droppedPackets += packets.size();
+            return false;
+        }
+        int frame = NO_FRAME;
+        if (packets.size() > 1) {
+            lastFrame = lastFrame == Integer.MAX_VALUE ? NO_FRAME + 1 : lastFrame + 1;
+            frame = lastFrame;
+        }
+        for (int i = 0; i < packets.size(); i++) {
+            add(packets.get(i), i == packets.size() - 1 ? token : null, frame);
+        }
+        return true;
+    }
+
+    private void add(byte[] packet, Object token, int frame) {
+        pending.addLast(new Entry(packet, token, System.nanoTime(), frame));
+        maxQueueDepth = Math.max(maxQueueDepth, pending.size() + inFlight.size());
+    }
+
+    /**
+     * Send queued packets until the window is full.
+     *
+     * @return false if the sender refused a packet and the caller should call
+     *         pump() again later; true otherwise
+     */
+    public boolean pump() {
+        while (inFlight.size() < window && !pending.isEmpty()) {
+            Entry entry = pending.peekFirst();
+            if (!sender.send(entry.packet)) {
+                if (++failedAttempts < MAX_SEND_ATTEMPTS) {
+                    return false;
+                }
+                // The stack keeps refusing this packet; give up on it
+                drop(pending.pollFirst());
+                failedAttempts = 0;
+                continue;
+            }
+            failedAttempts = 0;
+            entry.sentAtNanos = System.nanoTime();
+            inFlight.addLast(pending.pollFirst());
+        }
+        return true;
+    }
+
+    /**
+     * Report that the oldest in-flight notification completed, then send more.
+     *
+     * @param success true if the stack reported the notification as delivered
+     * @return same as {@link #pump()}
+     */
+    public boolean onSent(boolean success) {
+        Entry entry = inFlight.pollFirst();
+        if (entry != null) {
+            if (success) {
+                long now = System.nanoTime();
+                sendLatency.recordNanos(now - entry.enqueuedAtNanos);
+                if (entry.token != null && deliveryListener != null) {
+                    deliveryListener.onDelivered(entry.token, now);
+                }
+            } else {
+                drop(entry);
+            }
+        }
+        return pump();
+    }
+
+    /**
+     * Give up on in-flight notifications whose completion never arrived.
+     *
+     * @param timeoutNanos How long a notification may stay in flight
+     * @return true if any in-flight notification was expired
+     */
+    public boolean expireInFlight(long timeoutNanos) {
+        long now = System.nanoTime();
+        boolean expired = false;
+        while (!inFlight.isEmpty() && now - inFlight.peekFirst().sentAtNanos >= timeoutNanos) {
+            drop(inFlight.pollFirst());
+            expired = true;
+        }
+        return expired;
+    }
+
+    /**
+     * Count a packet that was given up as dropped, together with the fragments of its
+     * frame still waiting to be sent. They follow it at the head of the pending queue.
+     */
+    private void drop(Entry entry) {
+        droppedPackets++;
+        if (entry.frame == NO_FRAME) {
+            return;
+        }
+        while (!pending.isEmpty() && pending.peekFirst().frame == entry.frame) {
+            pending.pollFirst();
+            droppedPackets++;
+        }
+    }
+
+    /**
+     * Drop everything, e.g. when the device disconnects.
+     */
+    public void clear() {
+        pending.clear();
+        inFlight.clear();
+        failedAttempts = 0;
+    }
+
+    /**
+     * Get the number of packets waiting to be sent, excluding those in flight.
+     */
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + pending.size()
+                + " inFlight=" + inFlight.size() + "/" + window
+                + " maxDepth=" + maxQueueDepth
+                + " dropped=" + droppedPackets
+                + " latency[" + sendLatency + "]";
+    }
+}
@@ -5,11 +5,24 @@ import java.util.UUID;
 /**
  * Binary protocol constants for BLE communication.
  *
- * Packet Structure:
+ * Packet Structure (v1):
  * ┌─────────┬─────────┬────────┬───────────┬──────────┐
  * │ VERSION │ COMMAND │ LENGTH │  PAYLOAD  │ CHECKSUM │
  * │  1 byte │  1 byte │ 1 byte │  0-N bytes│  1 byte  │
  * └─────────┴─────────┴────────┴───────────┴──────────┘
+ *
+ * Packet Structure (v2): same header, CHECKSUM replaced by a big-endian CRC-16/CCITT
+ * ┌─────────┬─────────┬────────┬───────────┬──────────┐
+ * │ VERSION │ COMMAND │ LENGTH │  PAYLOAD  │  CRC-16  │
+ * │  1 byte │  1 byte │ 1 byte │  0-N bytes│  2 bytes │
+ * └─────────┴─────────┴────────┴───────────┴──────────┘
+ *
+ * Controllers start in v1 and may upgrade with a HELLO exchange.
+ *
+ * The high nibble of VERSION carries frame flags (see FRAME_FLAG_*); the low nibble
+ * is the protocol version. With FRAME_FLAG_REQUEST_ID set, a 1-byte request ID sits
+ * between PAYLOAD and the checksum (not counted in LENGTH) and is echoed in the reply.
+ * With FRAME_FLAG_SEQUENCE set, a 1-byte sequence number follows it.
  */
 public final class BleProtocol {
 
@@ -20,12 +33,77 @@ public final class BleProtocol {
     // Protocol version
     public static final byte PROTOCOL_VERSION = 0x01;
 
+    // Protocol version 2 (CRC-16 instead of XOR checksum)
+    public static final byte PROTOCOL_VERSION_2 = 0x02;
+
+    // Highest protocol version this server speaks
+    public static final byte MAX_PROTOCOL_VERSION = PROTOCOL_VERSION_2;
+
+    // ==================== Frame Flags (high nibble of VERSION) ====================
+
+    // Low nibble of the VERSION byte: the protocol version
+    public static final int VERSION_MASK = 0x0F;
+
+    // Frame carries a 1-byte request ID before the checksum, echoed in the reply.
+    // Lets controllers pipeline commands and match replies, including deferred ones.
+    public static final int FRAME_FLAG_REQUEST_ID = 0x10;
+
+    // Frame carries a 1-byte sequence number before the checksum (after the request ID,
+    // if any). Controllers number each new command and keep the number when they
+    // retransmit it; a retransmission is answered from ReplayWindow, not executed again.
+    // The top bit keeps flagged VERSION bytes out of printable ASCII (LegacyTextProtocol).
+    public static final int FRAME_FLAG_SEQUENCE = 0x80;
+
+    // Flags this server understands; frames with any other flag are rejected
+    public static final int SUPPORTED_FRAME_FLAGS = FRAME_FLAG_REQUEST_ID | FRAME_FLAG_SEQUENCE;
+
+    // Value of ParsedCommand.getRequestId() when the frame carried none
+    public static final int NO_REQUEST_ID = -1;
+
+    // Value of ParsedCommand.getSequence() when the frame carried none
+    public static final int NO_SEQUENCE = -1;
+
     // Minimum packet size (version + command + length + checksum)
     public static final int MIN_PACKET_SIZE = 4;
 
-    // Maximum payload size (fits in MTU of 20 with header)
+    // Minimum v2 packet size (version + command + length + crc16)
+    public static final int MIN_PACKET_SIZE_V2 = 5;
+
+    // Maximum payload size that fits a single packet at the default MTU (20 bytes with header).
+    // Larger frames are split by BleFragmenter.
     public static final int MAX_PAYLOAD_SIZE = 16;
 
+    // Largest frame the 1-byte LENGTH field allows (header + 255 payload bytes + request ID
+    // + sequence number + v2 crc16)
+    public static final int MAX_FRAME_SIZE = MIN_PACKET_SIZE_V2 + 255 + 2;
+
+    // ==================== MTU / Fragmentation ====================
+
+    // Default ATT MTU before the client negotiates a larger one
+    public static final int DEFAULT_ATT_MTU = 23;
+
+    // ATT header bytes (opcode + handle) taken out of every MTU-sized packet
+    public static final int ATT_HEADER_SIZE = 3;
+
+    /**
+     * Fragment Packet Structure (used when a frame exceeds MTU - 3):
+     * ┌─────────┬───────────────────┬────────────┐
+     * │ MARKER  │ MORE(1) | SEQ(7)  │ FRAME DATA │
+     * │  1 byte │      1 byte       │  0-N bytes │
+     * └─────────┴───────────────────┴────────────┘
+     * SEQ starts at 0 for each frame; MORE is set on every fragment but the last.
+     */
+    public static final byte FRAGMENT_MARKER = (byte) 0xF0;
+    public static final int FRAGMENT_HEADER_SIZE = 2;
+    public static final byte FRAGMENT_FLAG_MORE = (byte) 0x80;
+    public static final int FRAGMENT_SEQ_MASK = 0x7F;
+
+    // Highest SEQ a fragment can have: a MAX_FRAME_SIZE frame split at the default MTU.
+    // Being below 0x10, a fragment's second byte never continues a UTF-8 character
+    // that starts with 0xF0 (0x90-0xBF), which keeps fragments apart from text.
+    public static final int MAX_FRAGMENT_SEQ =
+            (MAX_FRAME_SIZE - 1) / (DEFAULT_ATT_MTU - ATT_HEADER_SIZE - FRAGMENT_HEADER_SIZE);
+
     // ==================== BLE UUIDs ====================
 
     public static final UUID SERVICE_UUID =
@@ -51,6 +129,18 @@ public final class BleProtocol {
     public static final byte CMD_PING = 0x07;
     public static final byte CMD_GET_STATUS = 0x08;
     public static final byte CMD_ROOM_JOINED = 0x09; // Async notification: glasses → phone after joining
+    public static final byte CMD_HELLO = 0x0A;       // Version/capabilities negotiation
+    public static final byte CMD_BATCH = 0x0B;       // Several TLV-encoded commands in one frame
+    public static final byte CMD_GET_STATUS_EX = 0x0C; // GET_STATUS plus charging state and temperature
+    public static final byte CMD_STATE_CHANGED = 0x0D; // Unsolicited notification: glasses → phone on state change
+    public static final byte CMD_GET_METRICS = 0x0E;   // Per-command latency percentiles
+    public static final byte CMD_XFER_OFFER = 0x0F;    // Start or resume a bulk transfer
+    public static final byte CMD_XFER_CHUNK = 0x10;    // One chunk of a bulk transfer (acked in batches)
+    public static final byte CMD_XFER_ACK = 0x11;      // Unsolicited notification: glasses → phone, acked offset
+    public static final byte CMD_XFER_CANCEL = 0x12;   // Abort a bulk transfer and drop its data
+    public static final byte CMD_JOIN_PROGRESS = 0x13; // Unsolicited notification: glasses → phone during a join
+    public static final byte CMD_NAV_KEY = 0x14;       // Remote D-pad key press (no reply)
+    public static final byte CMD_NAV_SCROLL = 0x15;    // Remote scroll delta (no reply, coalesced)
 
     // Response command mask (command | 0x80)
     public static final byte RESPONSE_MASK = (byte) 0x80;
@@ -70,45 +160,229 @@ public final class BleProtocol {
     public static final byte FLAG_VIDEO_MUTED = 0x02;    // bit 1
     public static final byte FLAG_IN_ROOM = 0x04;        // bit 2
 
+    /*
+     * GET_STATUS_EX Response Payload:
+     *   [status:1][batteryLevel:1][flags:1][charging:1][temperature:2]
+     *   charging: 1 while charging or full on external power, 0 otherwise
+     *   temperature: battery temperature in tenths of a degree Celsius, big-endian signed
+     */
+    public static final short TEMPERATURE_UNKNOWN = Short.MIN_VALUE;
+
+    // ==================== HELLO Capabilities ====================
+
+    /*
+     * HELLO Payload: [maxVersion:1][capabilities:1]
+     * HELLO Response Payload: [status:1][version:1][capabilities:1]
+     *   version: protocol version both sides will use from now on
+     *   capabilities: intersection of client and server capability bits
+     */
+    public static final byte CAP_CRC16 = 0x01;           // bit 0: v2 framing with CRC-16
+    public static final byte CAP_FRAGMENTATION = 0x02;   // bit 1: BleFragmenter fragments
+    public static final byte CAP_STATE_PUSH = 0x04;      // bit 2: unsolicited STATE_CHANGED notifications
+    public static final byte CAP_REQUEST_ID = 0x08;      // bit 3: FRAME_FLAG_REQUEST_ID frames are echoed
+    public static final byte CAP_PING_TIMESTAMP = 0x10;  // bit 4: timestamped PING (see below)
+    public static final byte CAP_JOIN_PROGRESS = 0x20;   // bit 5: JOIN_PROGRESS notifications
+    public static final byte CAP_NAV_INPUT = 0x40;       // bit 6: NAV_KEY and NAV_SCROLL
+    public static final byte CAP_SEQUENCE = (byte) 0x80; // bit 7: FRAME_FLAG_SEQUENCE retransmissions are deduplicated
+
+    /*
+     * Timestamped PING, for round-trip time and clock offset (NTP-style):
+     * PING Payload: empty (plain PONG), [t1:8], or [t1:8][prevT1:8][prevT4:8]
+     *   t1: controller time when this PING was sent
+     *   prevT1/prevT4: send time of the previous timestamped PING and the controller time its
+     *   PONG arrived, so the glasses can complete that exchange and update their estimate
+     * PONG Payload: [status:1] or, for a timestamped PING, [status:1][t1:8][t2:8][t3:8]
+     *   t2/t3: glasses time when the PING was received and when the PONG was built
+     * Times are big-endian microseconds on each side's monotonic clock. With t4 the time the
+     * PONG arrives: rtt = (t4 - t1) - (t3 - t2), offset = ((t2 - t1) + (t3 - t4)) / 2,
+     * where offset is glasses time minus controller time.
+     */
+    public static final int PING_TIMESTAMP_SIZE = 8;
+    public static final int PING_REPORT_SIZE = 3 * PING_TIMESTAMP_SIZE;
+
+    /*
+     * STATE_CHANGED Notification Payload (command 0x8D): [status:1][batteryLevel:1][flags:1]
+     *   Same layout as a command status response. Sent to devices that agreed on
+     *   CAP_STATE_PUSH whenever mic/video/room state changes or the battery level
+     *   crosses a BATTERY_PUSH_STEP boundary, debounced so bursts collapse into one frame.
+     */
+    public static final int BATTERY_PUSH_STEP = 10;
+
+    /*
+     * JOIN_PROGRESS Notification Payload (command 0x93):
+     *   [status:1][phase:1][phaseCount:1][elapsedMs:4]
+     *   Sent to devices that agreed on CAP_JOIN_PROGRESS when a join enters each JOIN_PHASE_*,
+     *   before the final ROOM_JOINED result. elapsedMs (big-endian) counts from when the
+     *   JOIN_ROOM was accepted. A device that sent the JOIN_ROOM with a request ID gets it echoed.
+     *   While a join is in progress, a repeated JOIN_ROOM is accepted without starting another.
+     */
+    public static final int JOIN_PHASE_VALIDATE = 1;     // Validating the link code
+    public static final int JOIN_PHASE_CONNECT = 2;      // Generating the user ID and connecting MQTT
+    public static final int JOIN_PHASE_JOIN_ROOM = 3;    // Calling the join API
+    public static final int JOIN_PHASE_MEDIA = 4;        // Connecting the LiveKit room
+    public static final int JOIN_PHASE_COUNT = 4;
+
+    // ==================== Remote Navigation ====================
+
+    /*
+     * Drives the document list and viewer on the glasses as a D-pad would.
+     * Neither command is answered (write them without response); malformed frames
+     * still get an error reply.
+     *
+     * NAV_KEY Payload: [key:1], one of NAV_KEY_*
+     * NAV_SCROLL Payload: [dx:2][dy:2], big-endian signed display pixels, positive = right/down
+     *   Deltas arriving within one frame are summed and applied together.
+     */
+    public static final int NAV_KEY_UP = 1;
+    public static final int NAV_KEY_DOWN = 2;
+    public static final int NAV_KEY_LEFT = 3;
+    public static final int NAV_KEY_RIGHT = 4;
+    public static final int NAV_KEY_CENTER = 5;
+    public static final int NAV_KEY_BACK = 6;
+
+    // ==================== Bulk Transfer ====================
+
+    /*
+     * Moves a blob (config, cached link codes, a small document) from controller to glasses.
+     *
+     * XFER_OFFER Payload: [transferId:1][totalSize:4][nameLength:1][name:nameLength]
+     * XFER_OFFER Response Payload: [status:1][transferId:1][resumeOffset:4][window:1][maxChunk:1]
+     *   resumeOffset: where to start; non-zero when a transfer with the same name and size
+     *   was interrupted (e.g. by a disconnect) and its data is still held; 0 if rejected
+     *   window: chunks the controller may send beyond the last acked offset
+     *   maxChunk: largest chunk data that fits one ATT write at the current MTU
+     * XFER_CHUNK Payload: [transferId:1][offset:4][data:1-maxChunk]
+     *   Sent with write-without-response and no request ID; there is no per-chunk reply.
+     *   Chunks of a transfer that is not active (unknown id, finished, cancelled) are dropped.
+     * XFER_ACK Notification Payload (command 0x91): [status:1][transferId:1][ackedOffset:4]
+     *   Sent every window/2 in-order chunks, when the transfer completes (ackedOffset ==
+     *   totalSize) and once per gap; after a gap the controller resends from ackedOffset.
+     * XFER_CANCEL Payload: [transferId:1]; Response Payload: [status:1]
+     * All offsets and sizes are big-endian.
+     */
+    public static final int MAX_XFER_SIZE = 256 * 1024;
+    public static final int XFER_WINDOW = 8;
+    public static final int XFER_CHUNK_HEADER_SIZE = 5;
+
+    // ==================== Status Beacon ====================
+
+    /*
+     * Status Beacon (advertisement service data under SERVICE_UUID, no connection needed):
+     *   [beaconVersion:1][flags:1][batteryLevel:1]
+     *   flags: same bits as status responses (FLAG_MIC_MUTED, FLAG_VIDEO_MUTED, FLAG_IN_ROOM)
+     *   Updated with the same debouncing and battery steps as STATE_CHANGED. While the beacon
+     *   is on, the service UUID and device name move to the scan response.
+     */
+    public static final byte BEACON_VERSION = 0x01;
+    public static final int BEACON_SIZE = 3;
+
+    // ==================== BATCH ====================
+
+    /*
+     * BATCH Payload: {[command:1][length:1][payload:length]}* (no nested BATCH or HELLO)
+     * BATCH Response Payload: [status:1][count:1]{[command:1][status:1]}*[batteryLevel:1][flags:1]
+     *   Sub-commands run in order; the trailing battery/flags reflect the state after all of them.
+     *   Deferred sub-commands (JOIN_ROOM/LEAVE_ROOM) report "accepted" here and still
+     *   send their own deferred result later.
+     *   A timestamped PING is rejected with STATUS_INVALID_PAYLOAD: the batch response
+     *   cannot carry its t2/t3, so it must be sent on its own. A plain PING is fine.
+     */
+    public static final int MAX_BATCH_COMMANDS = 8;
+
+    // ==================== GET_METRICS ====================
+
+    /*
+     * GET_METRICS Payload: empty (all commands seen so far) or [command:1] (just that one)
+     * GET_METRICS Response Payload: [status:1][count:1]{entry}*
+     *   entry: [command:1][samples:2]
+     *          [queueP50:2][queueP99:2][handlerP50:2][handlerP99:2]
+     *          [sendP50:2][sendP99:2][totalP50:2][totalP99:2]
+     *   Latencies are big-endian in units of METRICS_UNIT_MICROS, saturating at 0xFFFF;
+     *   samples saturates at 0xFFFF too. Stages are described in CommandMetrics.
+     */
+    public static final int METRICS_UNIT_MICROS = 100;
+    public static final int METRICS_ENTRY_SIZE = 19;
+    public static final int MAX_METRICS_ENTRIES = (255 - 2) / METRICS_ENTRY_SIZE;
+
+    // Capabilities supported by this server
+    public static final byte SERVER_CAPABILITIES =
+            CAP_CRC16 | CAP_FRAGMENTATION | CAP_STATE_PUSH | CAP_REQUEST_ID | CAP_PING_TIMESTAMP
+                    | CAP_JOIN_PROGRESS | CAP_NAV_INPUT | CAP_SEQUENCE;
+
     // ==================== Utility Methods ====================
 
     /**
      * Calculate XOR checksum of all bytes in the array up to (but not including) the last byte.
      */
     public static byte calculateChecksum(byte[] data, int length) {
+        return calculateChecksum(data, 0, length);
+    }
+
+    /**
+     * Calculate XOR checksum of {@code length} bytes starting at {@code offset}.
+     */
+    public static byte calculateChecksum(byte[] data, int offset, int length) {
         byte checksum = 0;
-        for (int i = 0; i < length; i++) {
+        for (int i = offset, end = offset + length; i < end; i++) {
             checksum ^= data[i];
         }
         return checksum;
     }
 
+    /**
+     * Check whether a version byte is one this server can parse.
+     */
+    public static boolean isSupportedVersion(byte version) {
+        return version == PROTOCOL_VERSION || version == PROTOCOL_VERSION_2;
+    }
+
+    /**
+     * Get the number of trailing integrity bytes for a protocol version.
+     */
+    public static int checksumSize(byte version) {
+        return version == PROTOCOL_VERSION_2 ? 2 : 1;
+    }
+
+    /**
+     * Get the minimum packet size for a protocol version.
+     */
+    public static int minPacketSize(byte version) {
+        return version == PROTOCOL_VERSION_2 ? MIN_PACKET_SIZE_V2 : MIN_PACKET_SIZE;
+    }
+
+    // CRC-16/CCITT lookup table (polynomial 0x1021), one entry per leading byte
+    private static final char[] CRC16_TABLE = new char[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC16_TABLE[i] = (char) crc;
+        }
+    }
+
+    /**
+     * Calculate CRC-16/CCITT (polynomial 0x1021, initial value 0xFFFF, no reflection)
+     * of {@code length} bytes starting at {@code offset}, in a single table-driven pass.
+     *
+     * @return The CRC as an unsigned 16-bit value
+     */
+    public static int calculateCrc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
     /**
      * Get human-readable command name for logging.
      */
     public static String getCommandName(byte command) {
-        switch (command) {
-            case CMD_JOIN_ROOM:
-                return "JOIN_ROOM";
-            case CMD_LEAVE_ROOM:
-                return "LEAVE_ROOM";
-            case CMD_MIC_MUTE:
-                return "MIC_MUTE";
-            case CMD_MIC_UNMUTE:
-                return "MIC_UNMUTE";
-            case CMD_VIDEO_MUTE:
-                return "VIDEO_MUTE";
-            case CMD_VIDEO_UNMUTE:
-                return "VIDEO_UNMUTE";
-            case CMD_PING:
-                return "PING";
-            case CMD_GET_STATUS:
-                return "GET_STATUS";
-            case CMD_ROOM_JOINED:
-                return "ROOM_JOINED";
-            default:
-                return "UNKNOWN(0x" + String.format("%02X", command) + ")";
-        }
+        BleCommandRegistry.Spec spec = BleCommandRegistry.get(command);
+        return spec != null ? spec.getName() : "UNKNOWN(0x" + String.format("%02X", command) + ")";
     }
 
     /**
@@ -0,0 +1,1466 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport-independent core of the BLE command protocol.
+ *
+ * The engine:
+ * - Keeps a session per connected controller, so several controllers can be connected at once
+ * - Reassembles fragmented frames per device and fragments large responses to the MTU
+ * - Parses binary commands (v1 and v2 framing, negotiated per device via HELLO)
+ * - Answers retransmitted commands (FRAME_FLAG_SEQUENCE) from a per-device ReplayWindow
+ *   instead of executing them again
+ * - Answers controllers that still speak LegacyTextProtocol on the same characteristic
+ * - Dispatches them through the opcode registry and keeps the device state (mic, video, room)
+ * - Sends responses through the transport, one window at a time, pacing on onPacketSent();
+ *   replies go to the requesting device, deferred results fan out to every connected device
+ * - Delegates command handling to a BleCommandListener
+ *
+ * It has no Android dependencies: BleGattServer runs it over BleGattTransport, while
+ * TcpLoopbackTransport and InMemoryTransport run the same engine on a plain JVM for
+ * load tests and controller simulators.
+ *
+ * Thread Safety: Transport callbacks only hand packets to a dedicated command thread,
+ * which owns parsing, protocol state and response building. Packets wait for it in
+ * priority lanes (see CommandLane), so PING and GET_STATUS overtake queued session
+ * setup. BleCommandListener callbacks run on that thread; ConnectionListener
+ * callbacks run on the transport's thread.
+ */
+public class BleProtocolEngine {
+
+    private static final String TAG = "BleProtocolEngine";
+
+    // Retry delay when the transport refuses a packet, and how long to wait for
+    // onPacketSent() before giving up on an in-flight packet
+    private static final long NOTIFICATION_RETRY_DELAY_MS = 10;
+    private static final long NOTIFICATION_TIMEOUT_MS = 1000;
+
+    // Window in which state changes are coalesced into one STATE_CHANGED notification
+    private static final long STATE_PUSH_DEBOUNCE_MS = 50;
+
+    // Mute/unmute toggles within this window are applied once, in their final state
+    private static final long TOGGLE_COALESCE_WINDOW_MS = 150;
+
+    // Scroll deltas within this window are applied together (one frame at 60 Hz)
+    private static final long SCROLL_COALESCE_WINDOW_MS = 16;
+
+    // A join without a result for this long no longer absorbs repeated JOIN_ROOMs
+    private static final long JOIN_TIMEOUT_MS = 60_000;
+
+    /**
+     * Listener for connection state changes. Called on the transport's thread.
+     */
+    public interface ConnectionListener {
+        void onDeviceConnected(String deviceName, String deviceAddress);
+        void onDeviceDisconnected(String deviceAddress);
+    }
+
+    /**
+     * Listener for the state pushed to controllers: called on the command thread with
+     * the same debouncing and battery steps as STATE_CHANGED, whether or not any
+     * controller is subscribed, and once with the initial state after start().
+     */
+    public interface StateListener {
+        void onStateChanged(int batteryLevel, boolean micMuted, boolean videoMuted, boolean inRoom);
+    }
+
+    /**
+     * Listener for messages from controllers speaking LegacyTextProtocol.
+     * Called on the command thread after the reply is queued.
+     */
+    public interface TextMessageListener {
+        void onTextMessage(String address, String message);
+    }
+
+    /**
+     * Source of the battery fields reported in status responses.
+     */
+    public interface BatterySource {
+        int getLevel();
+        boolean isCharging();
+        int getTemperatureDeciC();
+    }
+
+    /**
+     * Battery source for hosts without a battery (simulators, tests): always full.
+     */
+    public static final BatterySource NO_BATTERY = new BatterySource() {
+        @Override
+        public int getLevel() {
+            return 100;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return false;
+        }
+
+        @Override
+        public int getTemperatureDeciC() {
+            return BleProtocol.TEMPERATURE_UNKNOWN;
+        }
+    };
+
+    /**
+     * Executes one command and returns its status. Runs on the command thread.
+     */
+    private interface CommandHandler {
+        byte execute(BleDeviceSession session, ParsedCommand parsed);
+    }
+
+    /**
+     * Builds the immediate reply of a synchronous command from its status.
+     */
+    private interface ResponseFactory {
+        byte[] build(BleDeviceSession session, ParsedCommand parsed, byte status);
+    }
+
+    private final BleTransport transport;
+    private final BatterySource battery;
+    private final ProtocolLogger log;
+
+    // Single thread that parses, executes and answers commands
+    private volatile ScheduledExecutorService commandExecutor;
+
+    // Received packets waiting for the command thread, by priority lane
+    private final CommandScheduler scheduler = new CommandScheduler();
+
+    // Connected controllers keyed by transport address. Sessions are added and removed
+    // on the transport's thread; their protocol state is only touched on the command thread.
+    private final Map<String, BleDeviceSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionId = new AtomicInteger(1);
+
+    // Raw inbound and outbound packets, formatted only when dumped
+    private final PacketCapture packetCapture = new PacketCapture();
+
+    // Incoming XFER_* transfers; interrupted ones survive disconnects for resume
+    private final BulkTransferReceiver bulkTransfers;
+
+    private volatile BleCommandListener commandListener;
+    private volatile ConnectionListener connectionListener;
+    private volatile StateListener stateListener;
+    private volatile TextMessageListener textMessageListener;
+
+    // State tracking (written from both the app and the command thread)
+    private volatile boolean micMuted = false;
+    private volatile boolean videoMuted = false;
+    private volatile boolean inRoom = false;
+
+    // Reused for every incoming packet; only touched on the command thread
+    private final ParsedCommand parsedCommand = new ParsedCommand();
+
+    // Reused while executing the entries of a BATCH command (command thread only)
+    private final ParsedCommand batchEntry = new ParsedCommand();
+    private final byte[] batchCommands = new byte[BleProtocol.MAX_BATCH_COMMANDS];
+    private final byte[] batchStatuses = new byte[BleProtocol.MAX_BATCH_COMMANDS];
+    private int batchCount;
+
+    // Server side of the opcode registry, indexed by unsigned command byte
+    private final CommandHandler[] handlers = new CommandHandler[256];
+    private final ResponseFactory[] responders = new ResponseFactory[256];
+
+    // Time from the transport callback until the command thread picks the packet up,
+    // and time spent processing a complete frame (parse, execute, respond)
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram processingLatency = new LatencyHistogram();
+
+    // Per-command stage latencies, reported by GET_METRICS
+    private final CommandMetrics commandMetrics = new CommandMetrics();
+
+    // Enqueue-to-sent latency of outbound packets, aggregated over all sessions
+    private final LatencyHistogram notificationSendLatency = new LatencyHistogram();
+
+    // Round-trip times reported by timestamped PINGs, over all controllers
+    private final LatencyHistogram roundTripLatency = new LatencyHistogram();
+
+    // Transport receive time of the command being executed (command thread only)
+    private long commandReceivedAtNanos;
+
+    // Replay windows of closed sessions by address, until a reconnect takes them
+    // over or they expire (command thread only)
+    private final Map<String, ReplayWindow> retiredReplayWindows = new HashMap<>();
+
+    // When the join in progress was accepted, -1 if none, and its link code; null if
+    // it was started locally (command thread only)
+    private long joinStartedNanos = -1;
+    private String joinLinkCode;
+
+    private volatile int notificationWindow = BleNotificationQueue.DEFAULT_WINDOW;
+
+    // Pending STATE_CHANGED push and the state last pushed, -1 if none (command thread only)
+    private ScheduledFuture<?> pendingStatePush;
+    private int lastPushedFlags = -1;
+    private int lastPushedBatteryStep = -1;
+
+    // Coalesce rapid MIC_/VIDEO_ toggles before they reach the listener (command thread only)
+    private final ToggleCoalescer micToggle =
+            new ToggleCoalescer(() -> micMuted, this::applyMicMuted);
+    private final ToggleCoalescer videoToggle =
+            new ToggleCoalescer(() -> videoMuted, this::applyVideoMuted);
+    private final ScrollCoalescer navScroll = new ScrollCoalescer(this::applyNavScroll);
+
+    /**
+     * Create an engine on top of a transport.
+     *
+     * @param transport The transport to receive packets from and send replies through
+     * @param battery   Source of the battery fields in status responses
+     * @param log       Where to log
+     */
+    public BleProtocolEngine(BleTransport transport, BatterySource battery, ProtocolLogger log) {
+        this.transport = transport;
+        this.battery = battery;
+        this.log = log;
+        this.bulkTransfers = new BulkTransferReceiver(log);
+        registerCommands();
+    }
+
+    /**
+     * Register the handler and reply of every request opcode. Decoding and
+     * sync/deferred semantics are described by BleCommandRegistry.
+     */
+    private void registerCommands() {
+        // Most synchronous commands respond with full device state
+        // so the controller always knows current state
+        ResponseFactory commandStatus = (session, parsed, status) ->
+                BleResponseBuilder.buildCommandStatusResponse(
+                        parsed.getVersion(),
+                        parsed.getCommand(),
+                        status,
+                        getBatteryLevel(),
+                        effectiveMicMuted(),
+                        effectiveVideoMuted(),
+                        inRoom
+                );
+        ResponseFactory commandAck = (session, parsed, status) ->
+                BleResponseBuilder.buildAckResponse(parsed.getVersion(), parsed.getCommand(), status);
+        CommandHandler alwaysOk = (session, parsed) -> BleProtocol.STATUS_OK;
+
+        // JOIN_ROOM and LEAVE_ROOM are deferred and have no immediate reply
+        register(BleProtocol.CMD_JOIN_ROOM, (session, parsed) -> handleJoinRoom(parsed), null);
+        register(BleProtocol.CMD_LEAVE_ROOM, (session, parsed) -> handleLeaveRoom(), null);
+        register(BleProtocol.CMD_MIC_MUTE, (session, parsed) -> handleMicMute(), commandStatus);
+        register(BleProtocol.CMD_MIC_UNMUTE, (session, parsed) -> handleMicUnmute(), commandStatus);
+        register(BleProtocol.CMD_VIDEO_MUTE, (session, parsed) -> handleVideoMute(), commandStatus);
+        register(BleProtocol.CMD_VIDEO_UNMUTE, (session, parsed) -> handleVideoUnmute(), commandStatus);
+        register(BleProtocol.CMD_GET_STATUS, alwaysOk, commandStatus);
+
+        // Timestamped PINGs measure round-trip time and clock offset per controller
+        register(BleProtocol.CMD_PING, this::handlePing, (session, parsed, status) -> {
+            if (parsed.getPayloadLength() == 0) {
+                return BleResponseBuilder.buildPongResponse(parsed.getVersion());
+            }
+            long sentMicros = parsed.getPayloadLong(0);
+            long receivedMicros = commandReceivedAtNanos / 1000;
+            long replyMicros = System.nanoTime() / 1000;
+            session.getLinkClock().onPong(sentMicros, receivedMicros, replyMicros);
+            return BleResponseBuilder.buildTimestampedPongResponse(
+                    parsed.getVersion(), sentMicros, receivedMicros, replyMicros);
+        });
+
+        register(BleProtocol.CMD_GET_STATUS_EX, alwaysOk,
+                (session, parsed, status) -> BleResponseBuilder.buildExtendedStatusResponse(
+                        parsed.getVersion(),
+                        status,
+                        getBatteryLevel(),
+                        effectiveMicMuted(),
+                        effectiveVideoMuted(),
+                        inRoom,
+                        battery.isCharging(),
+                        battery.getTemperatureDeciC()
+                ));
+
+        // Answered from the recorded metrics when the response is built
+        register(BleProtocol.CMD_GET_METRICS, alwaysOk, (session, parsed, status) -> {
+            int filter = parsed.getPayloadLength() == 1 ? parsed.getPayloadByte(0) & 0xFF : -1;
+            return BleResponseBuilder.buildMetricsResponse(parsed.getVersion(), commandMetrics, filter);
+        });
+
+        register(BleProtocol.CMD_HELLO, this::handleHello,
+                (session, parsed, status) -> BleResponseBuilder.buildHelloResponse(
+                        parsed.getVersion(),
+                        session.getVersion(),
+                        session.getCapabilities()
+                ));
+
+        // BATCH runs its sub-commands in order and answers with one aggregated response
+        register(BleProtocol.CMD_BATCH, this::executeBatch,
+                (session, parsed, status) -> BleResponseBuilder.buildBatchResponse(
+                        parsed.getVersion(),
+                        batchCommands,
+                        batchStatuses,
+                        batchCount,
+                        getBatteryLevel(),
+                        effectiveMicMuted(),
+                        effectiveVideoMuted(),
+                        inRoom
+                ));
+
+        register(BleProtocol.CMD_XFER_OFFER, bulkTransfers::offer,
+                (session, parsed, status) -> BleResponseBuilder.buildXferOfferResponse(
+                        parsed.getVersion(),
+                        status,
+                        parsed.getPayloadByte(0) & 0xFF,
+                        bulkTransfers.getResumeOffset(session),
+                        BleProtocol.XFER_WINDOW,
+                        BulkTransferReceiver.maxChunk(session)
+                ));
+
+        // Chunks are written without response; progress goes back as XFER_ACK notifications
+        register(BleProtocol.CMD_XFER_CHUNK, (session, parsed) -> {
+            byte[] ack = bulkTransfers.onChunk(session, parsed);
+            if (ack != null) {
+                sendResponse(session, ack);
+            }
+            return BleProtocol.STATUS_OK;
+        }, null);
+        register(BleProtocol.CMD_XFER_CANCEL, bulkTransfers::cancel, commandAck);
+
+        // Remote D-pad input goes straight to the listener without replies
+        register(BleProtocol.CMD_NAV_KEY, (session, parsed) -> handleNavKey(parsed), null);
+        register(BleProtocol.CMD_NAV_SCROLL, (session, parsed) -> handleNavScroll(parsed), null);
+    }
+
+    private void register(byte command, CommandHandler handler, ResponseFactory responder) {
+        BleCommandRegistry.Spec spec = BleCommandRegistry.get(command);
+        if (spec == null || !spec.isRequest() || spec.isSilent() != (responder == null)) {
+            throw new IllegalStateException("Handler does not match registry: "
+                    + BleProtocol.getCommandName(command));
+        }
+        handlers[command & 0xFF] = handler;
+        responders[command & 0xFF] = responder;
+    }
+
+    /**
+     * Set the command listener to handle incoming commands.
+     */
+    public void setCommandListener(BleCommandListener listener) {
+        this.commandListener = listener;
+    }
+
+    /**
+     * Set the connection listener to receive connection state updates.
+     */
+    public void setConnectionListener(ConnectionListener listener) {
+        this.connectionListener = listener;
+    }
+
+    /**
+     * Set the listener for pushed state, e.g. to mirror it in an advertisement.
+     */
+    public void setStateListener(StateListener listener) {
+        this.stateListener = listener;
+    }
+
+    /**
+     * Set the listener for LegacyTextProtocol messages.
+     */
+    public void setTextMessageListener(TextMessageListener listener) {
+        this.textMessageListener = listener;
+    }
+
+    /**
+     * Set the listener for completed bulk transfers (called on the command thread).
+     */
+    public void setBulkTransferListener(BulkTransferReceiver.Listener listener) {
+        bulkTransfers.setListener(listener);
+    }
+
+    /**
+     * Get the bulk transfer receiver, e.g. to read its throughput counters.
+     */
+    public BulkTransferReceiver getBulkTransferReceiver() {
+        return bulkTransfers;
+    }
+
+    /**
+     * Update the mic muted state (for GET_STATUS responses and STATE_CHANGED pushes).
+     */
+    public void setMicMuted(boolean muted) {
+        if (this.micMuted != muted) {
+            this.micMuted = muted;
+            onStateChanged();
+        }
+    }
+
+    /**
+     * Update the video muted state (for GET_STATUS responses and STATE_CHANGED pushes).
+     */
+    public void setVideoMuted(boolean muted) {
+        if (this.videoMuted != muted) {
+            this.videoMuted = muted;
+            onStateChanged();
+        }
+    }
+
+    /**
+     * Update the in-room state (for GET_STATUS responses and STATE_CHANGED pushes).
+     */
+    public void setInRoom(boolean inRoom) {
+        if (this.inRoom != inRoom) {
+            this.inRoom = inRoom;
+            onStateChanged();
+        }
+    }
+
+    /**
+     * Tell the engine the battery source changed, so subscribed devices get a
+     * STATE_CHANGED push if the level crossed a step.
+     */
+    public void onBatteryChanged() {
+        onStateChanged();
+    }
+
+    /**
+     * Check if the engine is running.
+     */
+    public boolean isRunning() {
+        return commandExecutor != null;
+    }
+
+    /**
+     * Get the histogram of time packets spend waiting for the command thread.
+     */
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    /**
+     * Get the histogram of round-trip times measured by timestamped PINGs.
+     */
+    public LatencyHistogram getRoundTripLatency() {
+        return roundTripLatency;
+    }
+
+    /**
+     * Get the RTT and clock offset estimate of a connected controller, or null if it
+     * is not connected.
+     */
+    public LinkClockEstimator getLinkClock(String address) {
+        BleDeviceSession session = sessions.get(address);
+        return session != null ? session.getLinkClock() : null;
+    }
+
+    /**
+     * Get the histogram of time packets of one priority lane spend waiting for the
+     * command thread.
+     */
+    public LatencyHistogram getQueueLatency(CommandLane lane) {
+        return scheduler.getQueueLatency(lane);
+    }
+
+    /**
+     * Get the histogram of time spent processing a complete command frame.
+     */
+    public LatencyHistogram getProcessingLatency() {
+        return processingLatency;
+    }
+
+    /**
+     * Get the per-command latency histograms (queue, handler, send and total).
+     */
+    public CommandMetrics getCommandMetrics() {
+        return commandMetrics;
+    }
+
+    /**
+     * Get the histogram of time from queueing a packet until the transport reports it sent.
+     */
+    public LatencyHistogram getNotificationSendLatency() {
+        return notificationSendLatency;
+    }
+
+    /**
+     * Get the number of outbound packets, across all devices, waiting for a
+     * free slot in their window.
+     */
+    public int getNotificationQueueDepth() {
+        int depth = 0;
+        for (BleDeviceSession session : sessions.values()) {
+            depth += session.getNotificationQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Get the ring buffer of raw inbound and outbound packets.
+     */
+    public PacketCapture getPacketCapture() {
+        return packetCapture;
+    }
+
+    /**
+     * Log the captured packets as hex, oldest first.
+     */
+    public void dumpPacketCapture() {
+        log.i(TAG, "Packet capture " + packetCapture + ":\n" + packetCapture.dump());
+    }
+
+    /**
+     * Write the captured packets in the PacketCapture export format, e.g. to a file
+     * that PacketReplay or the replay benchmark can load. The stream is not closed.
+     */
+    public void exportPacketCapture(OutputStream out) throws IOException {
+        packetCapture.writeTo(out);
+    }
+
+    /**
+     * Set how many packets may be in flight per device before waiting for
+     * onPacketSent(). Defaults to 1, which is what every Android BLE stack
+     * handles reliably.
+     */
+    public void setNotificationWindow(int window) {
+        notificationWindow = window;
+        runOnCommandThread(() -> {
+            for (BleDeviceSession session : sessions.values()) {
+                session.getNotificationQueue().setWindow(window);
+            }
+        });
+    }
+
+    /**
+     * Check if at least one device is currently connected.
+     */
+    public boolean isConnected() {
+        return !sessions.isEmpty();
+    }
+
+    /**
+     * Get the number of currently connected devices.
+     */
+    public int getConnectedDeviceCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Start the command thread and the transport.
+     *
+     * @return true if started successfully, false otherwise
+     */
+    public synchronized boolean start() {
+        if (commandExecutor != null) {
+            log.w(TAG, "Engine already running");
+            return true;
+        }
+
+        commandExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "BleCommandThread");
+            thread.setPriority(Thread.MAX_PRIORITY);
+            return thread;
+        });
+
+        if (!transport.start(transportCallback)) {
+            log.e(TAG, "Failed to start transport", null);
+            stop();
+            return false;
+        }
+
+        // Report the initial state to the StateListener
+        runOnCommandThread(this::requestStatePush);
+        return true;
+    }
+
+    /**
+     * Stop the transport and the command thread. Commands already queued are finished first.
+     */
+    public synchronized void stop() {
+        transport.stop();
+
+        BleDeviceSession[] closing = sessions.values().toArray(new BleDeviceSession[0]);
+        sessions.clear();
+        for (BleDeviceSession session : closing) {
+            session.markClosed();
+        }
+
+        ScheduledExecutorService executor = commandExecutor;
+        if (executor != null) {
+            // Let already queued commands finish before the per-device state is dropped
+            executor.execute(() -> {
+                logLatency();
+                scheduler.clear();
+                // Nothing can resume after stop, so interrupted transfers go too
+                for (BleDeviceSession session : closing) {
+                    session.reset();
+                }
+                bulkTransfers.clear();
+                if (pendingStatePush != null) {
+                    pendingStatePush.cancel(false);
+                    pendingStatePush = null;
+                }
+                lastPushedFlags = -1;
+                lastPushedBatteryStep = -1;
+                joinStartedNanos = -1;
+                joinLinkCode = null;
+                // Toggles in an open window were already acked; apply them
+                micToggle.flush();
+                videoToggle.flush();
+                navScroll.clear();
+                retiredReplayWindows.clear();
+            });
+            executor.shutdown();
+            commandExecutor = null;
+        }
+    }
+
+    /**
+     * Send a deferred command result with full device state (mic, video, inRoom)
+     * to every connected device, so all controllers see the same outcome.
+     * Used for async commands like JOIN_ROOM and LEAVE_ROOM whose result is
+     * only known after the operation completes.
+     *
+     * @param command The original command byte (e.g. CMD_JOIN_ROOM)
+     * @param success true if the operation succeeded, false otherwise
+     */
+    public void sendDeferredCommandResult(byte command, boolean success) {
+        runOnCommandThread(() -> sendDeferredCommandResultInternal(command, success));
+    }
+
+    private void sendDeferredCommandResultInternal(byte command, boolean success) {
+        byte status = success ? BleProtocol.STATUS_OK : BleProtocol.STATUS_ERROR;
+        byte request = deferredRequestCommand(command);
+        if (request == BleProtocol.CMD_JOIN_ROOM) {
+            joinStartedNanos = -1;
+            joinLinkCode = null;
+        }
+        int batteryLevel = getBatteryLevel();
+        boolean micMuted = effectiveMicMuted();
+        boolean videoMuted = effectiveVideoMuted();
+        for (BleDeviceSession session : sessions.values()) {
+            // Each connected device gets the result framed in the version it negotiated,
+            // subscribed or not, as before there were several; the one that sent the
+            // command with a request ID gets that ID echoed
+            byte[] response = BleResponseBuilder.buildCommandStatusResponse(
+                    session.getVersion(), command, status, batteryLevel, micMuted, videoMuted, inRoom
+            );
+            // Cache the result even where it cannot be delivered, so retransmissions
+            // are answered instead of dropped as still pending
+            ReplayWindow replays = session.getReplayWindow();
+            if (replays != null) {
+                replays.complete(request, response);
+            }
+            sendResponse(session, BleResponseBuilder.withRequestId(response,
+                    session.takeDeferredRequestId(request)));
+        }
+        log.i(TAG, "Deferred response sent for " + BleProtocol.getCommandName(command)
+                + ": " + BleProtocol.getStatusName(status)
+                + " [mic=" + (micMuted ? "muted" : "on")
+                + ", video=" + (videoMuted ? "off" : "on")
+                + ", inRoom=" + inRoom + "]");
+    }
+
+    /**
+     * Report that the join in progress entered a phase, so controllers can show progress
+     * and hold off retrying. Sent as JOIN_PROGRESS to every subscribed device that
+     * agreed on CAP_JOIN_PROGRESS. A join started locally rather than by JOIN_ROOM is
+     * timed from its first progress report.
+     *
+     * @param phase One of BleProtocol.JOIN_PHASE_*
+     */
+    public void sendJoinProgress(int phase) {
+        runOnCommandThread(() -> sendJoinProgressInternal(phase));
+    }
+
+    private void sendJoinProgressInternal(int phase) {
+        long now = System.nanoTime();
+        if (joinStartedNanos < 0) {
+            joinStartedNanos = now;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(now - joinStartedNanos);
+
+        for (BleDeviceSession session : sessions.values()) {
+            if (session.isNotificationsEnabled()
+                    && (session.getCapabilities() & BleProtocol.CAP_JOIN_PROGRESS) != 0) {
+                byte[] notification = BleResponseBuilder.buildJoinProgressNotification(
+                        session.getVersion(), phase, elapsedMs);
+                sendResponse(session, BleResponseBuilder.withRequestId(notification,
+                        session.getDeferredRequestId(BleProtocol.CMD_JOIN_ROOM)));
+            }
+        }
+        log.i(TAG, "Join progress: phase " + phase + "/" + BleProtocol.JOIN_PHASE_COUNT
+                + " after " + elapsedMs + " ms");
+    }
+
+    /**
+     * Map a deferred result to the command that started it: a successful join is
+     * reported as ROOM_JOINED, everything else with the request's own command.
+     */
+    private static byte deferredRequestCommand(byte resultCommand) {
+        return resultCommand == BleProtocol.CMD_ROOM_JOINED ? BleProtocol.CMD_JOIN_ROOM : resultCommand;
+    }
+
+    /**
+     * Send a binary response to every connected device.
+     * Must be called on the command thread.
+     *
+     * @param response The response packet bytes
+     * @return true if queued for at least one device, false otherwise
+     */
+    public boolean sendResponse(byte[] response) {
+        boolean queued = false;
+        for (BleDeviceSession session : sessions.values()) {
+            queued |= sendResponse(session, response);
+        }
+        return queued;
+    }
+
+    // ==================== Private Methods ====================
+
+    /**
+     * Send a binary response to one device.
+     * Responses larger than the device's MTU allows are split into fragments, and all
+     * packets go through the device's notification queue so they never overlap on the air.
+     * Must be called on the command thread.
+     *
+     * @param session  The device to send to
+     * @param response The response packet bytes
+     * @return true if queued for sending, false otherwise
+     */
+    private boolean sendResponse(BleDeviceSession session, byte[] response) {
+        return sendResponse(session, response, null);
+    }
+
+    /**
+     * Send a reply to one device and record its SEND/TOTAL latency once the
+     * last packet of the reply has been sent.
+     *
+     * @param sample Timestamps of the command being answered, or null
+     */
+    private boolean sendResponse(BleDeviceSession session, byte[] response, CommandMetrics.Sample sample) {
+        if (commandExecutor == null || session.isClosed()) {
+            log.e(TAG, "Cannot send response to " + session.getAddress() + ": Not connected", null);
+            return false;
+        }
+
+        List<byte[]> packets = BleFragmenter.fragment(response, session.getMtu());
+        BleNotificationQueue queue = session.getNotificationQueue();
+
+        boolean success = queue.enqueueAll(packets, sample);
+        scheduleNotifications(session, queue.pump());
+
+        if (!success) {
+            log.e(TAG, "Failed to queue response for " + session, null);
+        }
+
+        return success;
+    }
+
+    /**
+     * Queue work on the command thread. Work submitted after stop() is dropped.
+     */
+    private void runOnCommandThread(Runnable task) {
+        ScheduledExecutorService executor = commandExecutor;
+        if (executor == null) {
+            log.w(TAG, "Command thread not running, dropping task");
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.w(TAG, "Command thread shut down, dropping task");
+        }
+    }
+
+    /**
+     * Log the command latency summary collected so far.
+     */
+    private void logLatency() {
+        if (queueLatency.getCount() > 0) {
+            log.i(TAG, "Command queue latency: " + queueLatency);
+            log.i(TAG, "Queue latency by lane:" + scheduler);
+            log.i(TAG, "Command processing latency: " + processingLatency);
+            log.i(TAG, "Notification send latency: " + notificationSendLatency);
+            if (roundTripLatency.getCount() > 0) {
+                log.i(TAG, "Round-trip time: " + roundTripLatency);
+            }
+            log.i(TAG, "Per-command latency:\n" + commandMetrics);
+            log.i(TAG, "Mic toggles: " + micToggle + ", video toggles: " + videoToggle
+                    + ", scrolls: " + navScroll);
+        }
+    }
+
+    /**
+     * Schedule a STATE_CHANGED push after a state change, if the engine is running.
+     */
+    private void onStateChanged() {
+        if (commandExecutor != null) {
+            runOnCommandThread(this::requestStatePush);
+        }
+    }
+
+    /**
+     * Schedule a STATE_CHANGED push unless one is already pending. Changes arriving
+     * within the debounce window are coalesced: the push reads the state when it fires.
+     */
+    private void requestStatePush() {
+        ScheduledExecutorService executor = commandExecutor;
+        if (executor == null || pendingStatePush != null) {
+            return;
+        }
+        try {
+            pendingStatePush = executor.schedule(this::pushState,
+                    STATE_PUSH_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Engine is stopping; nothing to push
+        }
+    }
+
+    /**
+     * Send the current state to every subscribed device that opted in via CAP_STATE_PUSH,
+     * unless it is the same as what was pushed last (e.g. a toggle that was undone
+     * within the debounce window, or a battery change within the same step).
+     */
+    private void pushState() {
+        pendingStatePush = null;
+
+        boolean mic = effectiveMicMuted();
+        boolean video = effectiveVideoMuted();
+        boolean room = inRoom;
+        int batteryLevel = getBatteryLevel();
+        int flags = BleResponseBuilder.stateFlags(mic, video, room);
+        int batteryStep = batteryLevel / BleProtocol.BATTERY_PUSH_STEP;
+        if (flags == lastPushedFlags && batteryStep == lastPushedBatteryStep) {
+            return;
+        }
+        lastPushedFlags = flags;
+        lastPushedBatteryStep = batteryStep;
+
+        StateListener listener = stateListener;
+        if (listener != null) {
+            listener.onStateChanged(batteryLevel, mic, video, room);
+        }
+
+        for (BleDeviceSession session : sessions.values()) {
+            if (session.isNotificationsEnabled()
+                    && (session.getCapabilities() & BleProtocol.CAP_STATE_PUSH) != 0) {
+                sendResponse(session, BleResponseBuilder.buildStateChangedNotification(
+                        session.getVersion(), batteryLevel, mic, video, room));
+            }
+        }
+    }
+
+    /**
+     * Get the session for a device, creating one if a packet arrived before
+     * the connection callback.
+     */
+    private BleDeviceSession getSession(String address) {
+        return sessions.computeIfAbsent(address, a -> newSession(a, null));
+    }
+
+    private BleDeviceSession newSession(String address, String name) {
+        BleDeviceSession session = new BleDeviceSession(address, name, nextSessionId.getAndIncrement(),
+                this::sendPacket, notificationSendLatency);
+        session.getNotificationQueue().setWindow(notificationWindow);
+        session.getNotificationQueue().setDeliveryListener((token, sentAtNanos) ->
+                commandMetrics.onReplySent((CommandMetrics.Sample) token, sentAtNanos));
+        return session;
+    }
+
+    /**
+     * Transmit one packet to a session's device.
+     * Called by the session's notification queue on the command thread.
+     */
+    private boolean sendPacket(BleDeviceSession session, byte[] packet) {
+        if (session.isClosed()) {
+            return false;
+        }
+
+        boolean sent = transport.send(session.getAddress(), packet);
+        if (sent) {
+            packetCapture.record(PacketCapture.DIRECTION_OUT, session.getId(), System.nanoTime(), packet);
+        }
+        return sent;
+    }
+
+    /**
+     * Follow up on a pump of a session's notification queue: retry shortly if the
+     * transport was busy, and make sure a lost onPacketSent() cannot stall the queue forever.
+     *
+     * @param pumped Result of the last pump; false if the transport refused a packet
+     */
+    private void scheduleNotifications(BleDeviceSession session, boolean pumped) {
+        ScheduledExecutorService executor = commandExecutor;
+        BleNotificationQueue queue = session.getNotificationQueue();
+        session.updateNotificationQueueDepth();
+        if (executor == null || session.isClosed()) {
+            return;
+        }
+
+        try {
+            if (!pumped && session.getNotificationRetry() == null) {
+                session.setNotificationRetry(executor.schedule(() -> {
+                    session.setNotificationRetry(null);
+                    scheduleNotifications(session, queue.pump());
+                }, NOTIFICATION_RETRY_DELAY_MS, TimeUnit.MILLISECONDS));
+            }
+
+            if (queue.getInFlightCount() > 0 && session.getNotificationTimeout() == null) {
+                session.setNotificationTimeout(executor.schedule(() -> {
+                    session.setNotificationTimeout(null);
+                    if (queue.expireInFlight(TimeUnit.MILLISECONDS.toNanos(NOTIFICATION_TIMEOUT_MS))) {
+                        log.w(TAG, "Notification to " + session.getAddress()
+                                + " not confirmed in time, moving on");
+                    }
+                    scheduleNotifications(session, queue.pump());
+                }, NOTIFICATION_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            }
+        } catch (RejectedExecutionException e) {
+            // Engine is stopping; the session is reset with the rest of the state
+        }
+    }
+
+    /**
+     * Get the current battery level from the battery source (no IPC).
+     */
+    private int getBatteryLevel() {
+        return battery.getLevel();
+    }
+
+    /**
+     * Handle a packet written by a device: reassemble fragments, then process
+     * the command once a complete frame is available.
+     *
+     * @param receivedAtNanos System.nanoTime() taken in the transport callback
+     */
+    private void handleIncomingPacket(BleDeviceSession session, byte[] packet, long receivedAtNanos) {
+        long startNanos = System.nanoTime();
+        queueLatency.recordNanos(startNanos - receivedAtNanos);
+
+        if (session.isClosed()) {
+            return;
+        }
+
+        packetCapture.record(PacketCapture.DIRECTION_IN, session.getId(), receivedAtNanos, packet);
+
+        // Both protocols share the write characteristic; tell them apart per write
+        if (!LegacyTextProtocol.isBinaryPacket(packet)) {
+            processTextMessage(session, packet);
+            processingLatency.recordNanos(System.nanoTime() - startNanos);
+            return;
+        }
+
+        byte[] frame = session.getAssembler().accept(packet);
+        if (frame != null) {
+            processCommand(session, frame, receivedAtNanos);
+            processingLatency.recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Handle the highest-priority packet waiting in the scheduler.
+     */
+    private void processNextPacket() {
+        CommandScheduler.Entry entry = scheduler.next();
+        if (entry != null) {
+            handleIncomingPacket(entry.session, entry.packet, entry.receivedAtNanos);
+        }
+    }
+
+    /**
+     * Answer a LegacyTextProtocol message and report it to the TextMessageListener.
+     */
+    private void processTextMessage(BleDeviceSession session, byte[] packet) {
+        String message = LegacyTextProtocol.decode(packet);
+        if (log.isDebugEnabled(TAG)) {
+            log.d(TAG, "Text message from " + session.getAddress() + ": " + message);
+        }
+
+        byte[] reply = LegacyTextProtocol.buildReply(message, session.getMtu());
+        if (reply != null) {
+            sendResponse(session, reply);
+        }
+
+        TextMessageListener listener = textMessageListener;
+        if (listener != null) {
+            listener.onTextMessage(session.getAddress(), message);
+        }
+    }
+
+    /**
+     * Process an incoming binary command.
+     * Replies go to the requesting device only and are framed with the same
+     * protocol version as the request.
+     *
+     * @param receivedAtNanos System.nanoTime() taken in the transport callback
+     */
+    private void processCommand(BleDeviceSession session, byte[] data, long receivedAtNanos) {
+        // Parse in place into the reusable command; nothing is copied or decoded
+        // unless a handler (or debug logging) asks for it.
+        ParsedCommand parsed = BleCommandParser.parse(data, 0, data.length, parsedCommand);
+
+        // Raw bytes are in the packet capture; see dumpPacketCapture()
+        if (log.isDebugEnabled(TAG)) {
+            log.d(TAG, "Parsed: " + parsed);
+        }
+
+        if (!parsed.isValid()) {
+            // Send error response
+            byte[] errorResponse = BleResponseBuilder.buildAckResponse(
+                    parsed.getVersion(),
+                    parsed.getCommand(),
+                    parsed.getErrorStatus()
+            );
+            sendResponse(session, BleResponseBuilder.withRequestId(errorResponse, parsed.getRequestId()));
+            return;
+        }
+
+        byte cmd = parsed.getCommand();
+        if (parsed.hasSequence() && replay(session, parsed)) {
+            return;
+        }
+        commandMetrics.record(cmd, CommandMetrics.STAGE_QUEUE, System.nanoTime() - receivedAtNanos);
+
+        // Handle the command
+        commandReceivedAtNanos = receivedAtNanos;
+        byte responseStatus = executeCommand(session, parsed);
+        long handledAtNanos = System.nanoTime();
+
+        // Deferred commands (JOIN_ROOM, LEAVE_ROOM) are async — response will be sent
+        // later via sendDeferredCommandResult() when the operation actually completes.
+        if (BleCommandRegistry.get(cmd).isDeferred()) {
+            // Only send an immediate error if the command was rejected synchronously
+            // (e.g. already in room, or not in room). STATUS_OK means async processing started.
+            if (responseStatus != BleProtocol.STATUS_OK) {
+                byte[] response = BleResponseBuilder.buildAckResponse(parsed.getVersion(), cmd, responseStatus);
+                sendResponse(session, BleResponseBuilder.withRequestId(response, parsed.getRequestId()));
+                rememberReply(session, parsed, ReplayWindow.STATE_REPLY, response);
+            } else {
+                if (parsed.hasRequestId()) {
+                    session.setDeferredRequestId(cmd, parsed.getRequestId());
+                }
+                rememberReply(session, parsed, ReplayWindow.STATE_PENDING, null);
+            }
+            return;
+        }
+        if (BleCommandRegistry.get(cmd).isSilent()) {
+            rememberReply(session, parsed, ReplayWindow.STATE_SILENT, null);
+            return;
+        }
+
+        // Send the registered response for synchronous commands, echoing any request ID
+        // so controllers can pipeline commands and match replies out of order
+        byte[] response = responders[cmd & 0xFF].build(session, parsed, responseStatus);
+        CommandMetrics.Sample sample = session.startSample(cmd, receivedAtNanos);
+        sample.markHandled(handledAtNanos);
+        sendResponse(session, BleResponseBuilder.withRequestId(response, parsed.getRequestId()), sample);
+        rememberReply(session, parsed, ReplayWindow.STATE_REPLY, response);
+    }
+
+    /**
+     * Answer a retransmitted command from the session's replay window: send the cached
+     * response again, tagged with the retransmission's request ID, or nothing if the
+     * command has no reply or its deferred result is still to come.
+     *
+     * @return true if the command was a retransmission and must not be executed
+     */
+    private boolean replay(BleDeviceSession session, ParsedCommand parsed) {
+        ReplayWindow replays = replayWindowOf(session);
+        int index = replays.find(parsed.getSequence(), parsed.getCommand(), System.nanoTime());
+        if (index < 0) {
+            return false;
+        }
+        boolean cached = replays.getState(index) == ReplayWindow.STATE_REPLY;
+        if (cached) {
+            sendResponse(session, BleResponseBuilder.withRequestId(
+                    replays.getResponse(index), parsed.getRequestId()));
+        }
+        log.i(TAG, "Retransmitted " + BleProtocol.getCommandName(parsed.getCommand())
+                + " (seq " + parsed.getSequence() + ") from " + session.getAddress()
+                + (cached ? ", answered from cache" : ", dropped"));
+        return true;
+    }
+
+    /**
+     * Record an executed sequenced command in the session's replay window.
+     *
+     * @param response The reply without request ID, or null if there is none (yet)
+     */
+    private void rememberReply(BleDeviceSession session, ParsedCommand parsed, int state, byte[] response) {
+        if (parsed.hasSequence()) {
+            replayWindowOf(session).record(parsed.getSequence(), parsed.getCommand(), state, response,
+                    System.nanoTime());
+        }
+    }
+
+    /**
+     * Get the replay window of a session, taking over the one its address left
+     * behind when a previous connection closed.
+     */
+    private ReplayWindow replayWindowOf(BleDeviceSession session) {
+        ReplayWindow replays = session.getReplayWindow();
+        if (replays == null) {
+            replays = retiredReplayWindows.remove(session.getAddress());
+            if (replays == null) {
+                replays = new ReplayWindow();
+            }
+            session.setReplayWindow(replays);
+        }
+        return replays;
+    }
+
+    /**
+     * Keep a closing session's replay window for a reconnect from the same address:
+     * a write whose reply was lost with the link is typically retried after reconnecting.
+     * Deferred results only go to connected devices, so pending entries are dropped
+     * and their retransmission runs again.
+     */
+    private void retireReplayWindow(BleDeviceSession session) {
+        long now = System.nanoTime();
+        retiredReplayWindows.values().removeIf(replays -> replays.isExpired(now));
+
+        ReplayWindow replays = session.getReplayWindow();
+        if (replays != null) {
+            replays.dropPending();
+            retiredReplayWindows.put(session.getAddress(), replays);
+            session.setReplayWindow(null);
+        }
+    }
+
+    /**
+     * Execute every entry of a BATCH command in order, keeping their statuses for the
+     * aggregated response. Deferred entries (JOIN_ROOM/LEAVE_ROOM) report whether they
+     * were accepted; their final result is still sent later via sendDeferredCommandResult().
+     */
+    private byte executeBatch(BleDeviceSession session, ParsedCommand batch) {
+        int count = 0;
+        for (int pos = 0; (pos = BleCommandParser.nextBatchEntry(batch, pos, batchEntry)) > 0; ) {
+            batchCommands[count] = batchEntry.getCommand();
+            if (batchEntry.getCommand() == BleProtocol.CMD_PING && batchEntry.getPayloadLength() > 0) {
+                // The batch response has no room for the PONG timestamps
+                batchStatuses[count++] = BleProtocol.STATUS_INVALID_PAYLOAD;
+                continue;
+            }
+            commandMetrics.record(batchEntry.getCommand(), CommandMetrics.STAGE_QUEUE,
+                    System.nanoTime() - commandReceivedAtNanos);
+            batchStatuses[count] = executeCommand(session, batchEntry);
+            count++;
+        }
+        batchCount = count;
+        return BleProtocol.STATUS_OK;
+    }
+
+    /**
+     * Execute a parsed command through its registered handler, record how long
+     * the handler took and return the status.
+     */
+    private byte executeCommand(BleDeviceSession session, ParsedCommand parsed) {
+        byte command = parsed.getCommand();
+        CommandHandler handler = handlers[command & 0xFF];
+        if (handler == null) {
+            return BleProtocol.STATUS_INVALID_COMMAND;
+        }
+        log.i(TAG, "Executing command: " + BleProtocol.getCommandName(command));
+
+        long start = System.nanoTime();
+        byte status = handler.execute(session, parsed);
+        commandMetrics.record(command, CommandMetrics.STAGE_HANDLER, System.nanoTime() - start);
+        return status;
+    }
+
+    private byte handleJoinRoom(ParsedCommand parsed) {
+        if (inRoom) {
+            return BleProtocol.STATUS_ALREADY_IN_ROOM;
+        }
+
+        long now = System.nanoTime();
+        String linkCode = parsed.getLinkCode();
+        if (joinStartedNanos >= 0 && now - joinStartedNanos < TimeUnit.MILLISECONDS.toNanos(JOIN_TIMEOUT_MS)
+                && linkCode != null && linkCode.equals(joinLinkCode)) {
+            // A controller retrying while the join runs gets the same progress and result
+            log.i(TAG, "JOIN_ROOM while the same join is in progress, not starting another");
+            return BleProtocol.STATUS_OK;
+        }
+        joinStartedNanos = now;
+        joinLinkCode = linkCode;
+
+        BleCommandListener listener = commandListener;
+        if (listener != null) {
+            // onJoinRoom kicks off the async join flow.
+            // The actual result will be sent later via sendDeferredCommandResult().
+            listener.onJoinRoom(
+                    linkCode,
+                    parsed.getUserName()
+            );
+        }
+
+        // STATUS_OK here means "accepted for processing" — processCommand() will
+        // not send a response for this; the deferred response comes later.
+        return BleProtocol.STATUS_OK;
+    }
+
+    /**
+     * Complete the previous timestamped PING exchange if this PING reports it.
+     * The new exchange is recorded when its PONG is built.
+     */
+    private byte handlePing(BleDeviceSession session, ParsedCommand parsed) {
+        if (parsed.getPayloadLength() == BleProtocol.PING_REPORT_SIZE) {
+            LinkClockEstimator clock = session.getLinkClock();
+            long rtt = clock.onReport(parsed.getPayloadLong(8), parsed.getPayloadLong(16));
+            if (rtt >= 0) {
+                roundTripLatency.recordMicros(rtt);
+                if (log.isDebugEnabled(TAG)) {
+                    log.d(TAG, "Link clock for " + session.getAddress() + ": " + clock);
+                }
+            }
+        }
+        return BleProtocol.STATUS_OK;
+    }
+
+    /**
+     * Negotiate protocol version and capabilities with a device.
+     * HELLO payload: [maxVersion:1][capabilities:1]
+     */
+    private byte handleHello(BleDeviceSession session, ParsedCommand parsed) {
+        byte clientMaxVersion = parsed.getPayloadByte(0);
+        byte clientCapabilities = parsed.getPayloadByte(1);
+
+        byte capabilities = (byte) (clientCapabilities & BleProtocol.SERVER_CAPABILITIES);
+        byte version = clientMaxVersion >= BleProtocol.PROTOCOL_VERSION_2
+                && (capabilities & BleProtocol.CAP_CRC16) != 0
+                ? BleProtocol.PROTOCOL_VERSION_2
+                : BleProtocol.PROTOCOL_VERSION;
+
+        session.setNegotiated(version, capabilities);
+
+        log.i(TAG, "HELLO from " + session.getAddress() + ": using v" + version
+                + ", capabilities=0x" + String.format("%02X", capabilities));
+        return BleProtocol.STATUS_OK;
+    }
+
+    private byte handleLeaveRoom() {
+        if (!inRoom) {
+            return BleProtocol.STATUS_NOT_CONNECTED;
+        }
+
+        BleCommandListener listener = commandListener;
+        if (listener != null) {
+            listener.onLeaveRoom();
+        }
+
+        inRoom = false;
+        requestStatePush();
+        return BleProtocol.STATUS_OK;
+    }
+
+    private byte handleMicMute() {
+        return requestToggle(micToggle, true);
+    }
+
+    private byte handleMicUnmute() {
+        return requestToggle(micToggle, false);
+    }
+
+    private byte handleVideoMute() {
+        return requestToggle(videoToggle, true);
+    }
+
+    private byte handleVideoUnmute() {
+        return requestToggle(videoToggle, false);
+    }
+
+    /**
+     * Record a mute/unmute request. The listener is not called here: the first request
+     * opens a coalescing window and only the final state is applied when it closes.
+     * The reply (and any STATE_CHANGED push) already carries that final state.
+     */
+    private byte requestToggle(ToggleCoalescer toggle, boolean muted) {
+        if (toggle.request(muted)) {
+            ScheduledExecutorService executor = commandExecutor;
+            boolean scheduled = false;
+            if (executor != null) {
+                try {
+                    executor.schedule(toggle::flush, TOGGLE_COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+                    scheduled = true;
+                } catch (RejectedExecutionException e) {
+                    // Engine is stopping; fall through and apply right away
+                }
+            }
+            if (!scheduled) {
+                toggle.flush();
+            }
+        }
+        requestStatePush();
+        return BleProtocol.STATUS_OK;
+    }
+
+    private byte handleNavKey(ParsedCommand parsed) {
+        BleCommandListener listener = commandListener;
+        if (listener != null) {
+            listener.onNavKey(parsed.getPayloadByte(0) & 0xFF);
+        }
+        return BleProtocol.STATUS_OK;
+    }
+
+    /**
+     * Apply a scroll delta now if no window is open, otherwise add it to the window's sum.
+     */
+    private byte handleNavScroll(ParsedCommand parsed) {
+        if (navScroll.request(parsed.getPayloadShort(0), parsed.getPayloadShort(2))) {
+            scheduleScrollFlush();
+        }
+        return BleProtocol.STATUS_OK;
+    }
+
+    private void scheduleScrollFlush() {
+        ScheduledExecutorService executor = commandExecutor;
+        if (executor != null) {
+            try {
+                executor.schedule(() -> {
+                    if (navScroll.flush()) {
+                        scheduleScrollFlush();
+                    }
+                }, SCROLL_COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Engine is stopping; the remaining deltas no longer matter
+            }
+        }
+        navScroll.clear();
+    }
+
+    private void applyNavScroll(int dx, int dy) {
+        BleCommandListener listener = commandListener;
+        if (listener != null) {
+            listener.onNavScroll(dx, dy);
+        }
+    }
+
+    private void applyMicMuted(boolean muted) {
+        BleCommandListener listener = commandListener;
+        if (listener != null) {
+            if (muted) {
+                listener.onMicMute();
+            } else {
+                listener.onMicUnmute();
+            }
+        }
+        micMuted = muted;
+    }
+
+    private void applyVideoMuted(boolean muted) {
+        BleCommandListener listener = commandListener;
+        if (listener != null) {
+            if (muted) {
+                listener.onVideoMute();
+            } else {
+                listener.onVideoUnmute();
+            }
+        }
+        videoMuted = muted;
+    }
+
+    /**
+     * Get the mic state replies report: the coalesced target while a toggle window is open.
+     */
+    private boolean effectiveMicMuted() {
+        return micToggle.effective();
+    }
+
+    private boolean effectiveVideoMuted() {
+        return videoToggle.effective();
+    }
+
+    // ==================== Transport Callback ====================
+
+    private final BleTransport.Callback transportCallback = new BleTransport.Callback() {
+
+        @Override
+        public void onDeviceConnected(String address, String name) {
+            // A reconnect from the same address starts over with a fresh session, but one
+            // created by callbacks that came before this one keeps its MTU and subscription
+            BleDeviceSession[] replaced = new BleDeviceSession[1];
+            BleDeviceSession session = sessions.compute(address, (a, existing) -> {
+                if (existing != null && !existing.isConnectReported()) {
+                    return existing;
+                }
+                replaced[0] = existing;
+                return newSession(a, name);
+            });
+            session.markConnectReported(name);
+
+            BleDeviceSession previous = replaced[0];
+            if (previous != null) {
+                previous.markClosed();
+                runOnCommandThread(() -> {
+                    retireReplayWindow(previous);
+                    previous.reset();
+                });
+            }
+
+            log.i(TAG, "Device connected: " + name + " [" + address + "], "
+                    + sessions.size() + " connected");
+
+            ConnectionListener listener = connectionListener;
+            if (listener != null) {
+                listener.onDeviceConnected(name, address);
+            }
+        }
+
+        @Override
+        public void onDeviceDisconnected(String address) {
+            BleDeviceSession session = sessions.remove(address);
+            log.i(TAG, "Device disconnected: " + address + ", " + sessions.size() + " connected");
+
+            if (session != null) {
+                // Commands already queued for this device are dropped once it is closed
+                session.markClosed();
+                runOnCommandThread(() -> {
+                    logLatency();
+                    bulkTransfers.onSessionClosed(session);
+                    retireReplayWindow(session);
+                    session.reset();
+                });
+            }
+
+            ConnectionListener listener = connectionListener;
+            if (listener != null) {
+                listener.onDeviceDisconnected(address);
+            }
+        }
+
+        @Override
+        public void onPacketReceived(String address, byte[] packet, long receivedAtNanos) {
+            // Queue by lane; each drain task handles the most urgent packet waiting
+            scheduler.submit(getSession(address), packet, receivedAtNanos);
+            runOnCommandThread(BleProtocolEngine.this::processNextPacket);
+        }
+
+        @Override
+        public void onSubscriptionChanged(String address, boolean subscribed) {
+            getSession(address).setNotificationsEnabled(subscribed);
+            if (log.isDebugEnabled(TAG)) {
+                log.d(TAG, "Notifications " + (subscribed ? "enabled" : "disabled") + " by " + address);
+            }
+        }
+
+        @Override
+        public void onMtuChanged(String address, int mtu) {
+            if (log.isDebugEnabled(TAG)) {
+                log.d(TAG, "MTU changed to: " + mtu + " for " + address);
+            }
+            getSession(address).setMtu(mtu);
+        }
+
+        @Override
+        public void onPacketSent(String address, boolean success) {
+            if (!success) {
+                log.w(TAG, "Packet to " + address + " failed");
+            }
+            BleDeviceSession session = sessions.get(address);
+            if (session != null) {
+                runOnCommandThread(() ->
+                        scheduleNotifications(session, session.getNotificationQueue().onSent(success)));
+            }
+        }
+    };
+}
@@ -6,14 +6,28 @@ package com.example.argeniecompanion.bluetooth.protocol;
  * Response Packet Structure:
  * ┌─────────┬─────────┬────────┬───────────┬──────────┐
  * │ VERSION │ COMMAND │ LENGTH │  PAYLOAD  │ CHECKSUM │
- * │  1 byte │  1 byte │ 1 byte │  0-N bytes│  1 byte  │
+ * │  1 byte │  1 byte │ 1 byte │  0-N bytes│ 1-2 bytes│
  * └─────────┴─────────┴────────┴───────────┴──────────┘
  *
  * Response command = request command | 0x80
+ * CHECKSUM is a 1-byte XOR for v1 and a big-endian CRC-16 for v2.
+ * Replies to frames with a request ID carry it too (see withRequestId()).
  *
  * Simple ACK Response Payload: [status:1]
  * Status Response Payload: [status:1][batteryLevel:1][flags:1]
  *   flags: bit0=micMuted, bit1=videoMuted, bit2=inRoom
+ * Extended Status Response Payload: [status:1][batteryLevel:1][flags:1][charging:1][temperature:2]
+ *   temperature: tenths of a degree Celsius, big-endian signed
+ * Metrics Response Payload: [status:1][count:1]{[command:1][samples:2][p50/p99 per stage:2 each]}*
+ * Timestamped PONG Payload: [status:1][t1:8][t2:8][t3:8] (microseconds, big-endian)
+ * HELLO Response Payload: [status:1][version:1][capabilities:1]
+ * BATCH Response Payload: [status:1][count:1]{[command:1][status:1]}*[batteryLevel:1][flags:1]
+ * XFER_OFFER Response Payload: [status:1][transferId:1][resumeOffset:4][window:1][maxChunk:1]
+ * XFER_ACK Notification Payload: [status:1][transferId:1][ackedOffset:4]
+ * JOIN_PROGRESS Notification Payload: [status:1][phase:1][phaseCount:1][elapsedMs:4]
+ * Status Beacon (advertisement service data, unframed): [beaconVersion:1][flags:1][batteryLevel:1]
+ *
+ * Methods without a version parameter build v1 packets.
  */
 public final class BleResponseBuilder {
 
@@ -29,16 +43,17 @@ public final class BleResponseBuilder {
      * @return The complete response packet
      */
     public static byte[] buildAckResponse(byte command, byte status) {
-        // Response: VERSION(1) + RESPONSE_CMD(1) + LENGTH(1) + STATUS(1) + CHECKSUM(1) = 5 bytes
-        byte[] response = new byte[5];
+        return buildAckResponse(BleProtocol.PROTOCOL_VERSION, command, status);
+    }
 
-        response[0] = BleProtocol.PROTOCOL_VERSION;
-        response[1] = (byte) (command | BleProtocol.RESPONSE_MASK);
-        response[2] = 1; // Payload length (just status byte)
+    /**
+     * Build a simple ACK response for a command using the given protocol version.
+     */
+    public static byte[] buildAckResponse(byte version, byte command, byte status) {
+        // Response: VERSION(1) + RESPONSE_CMD(1) + LENGTH(1) + STATUS(1) + CHECKSUM(1-2)
+        byte[] response = newResponse(version, command, 1);
         response[3] = status;
-        response[4] = BleProtocol.calculateChecksum(response, 4);
-
-        return response;
+        return seal(response);
     }
 
     /**
@@ -53,33 +68,8 @@ public final class BleResponseBuilder {
      */
     public static byte[] buildStatusResponse(byte status, int batteryLevel,
                                               boolean micMuted, boolean videoMuted, boolean inRoom) {
-        // Response: VERSION(1) + RESPONSE_CMD(1) + LENGTH(1) + STATUS(1) + BATTERY(1) + FLAGS(1) + CHECKSUM(1) = 7 bytes
-        byte[] response = new byte[7];
-
-        // Build flags byte
-        byte flags = 0;
-        if (micMuted) {
-            flags |= BleProtocol.FLAG_MIC_MUTED;
-        }
-        if (videoMuted) {
-            flags |= BleProtocol.FLAG_VIDEO_MUTED;
-        }
-        if (inRoom) {
-            flags |= BleProtocol.FLAG_IN_ROOM;
-        }
-
-        // Clamp battery level to valid range
-        int clampedBattery = Math.max(0, Math.min(100, batteryLevel));
-
-        response[0] = BleProtocol.PROTOCOL_VERSION;
-        response[1] = (byte) (BleProtocol.CMD_GET_STATUS | BleProtocol.RESPONSE_MASK);
-        response[2] = 3; // Payload length (status + battery + flags)
-        response[3] = status;
-        response[4] = (byte) clampedBattery;
-        response[5] = flags;
-        response[6] = BleProtocol.calculateChecksum(response, 6);
-
-        return response;
+        return buildCommandStatusResponse(BleProtocol.PROTOCOL_VERSION, BleProtocol.CMD_GET_STATUS,
+                status, batteryLevel, micMuted, videoMuted, inRoom);
     }
 
     /**
@@ -96,24 +86,148 @@ public final class BleResponseBuilder {
      */
     public static byte[] buildCommandStatusResponse(byte command, byte status, int batteryLevel,
                                                      boolean micMuted, boolean videoMuted, boolean inRoom) {
-        byte[] response = new byte[7];
+        return buildCommandStatusResponse(BleProtocol.PROTOCOL_VERSION, command, status,
+                batteryLevel, micMuted, videoMuted, inRoom);
+    }
 
-        byte flags = 0;
-        if (micMuted) flags |= BleProtocol.FLAG_MIC_MUTED;
-        if (videoMuted) flags |= BleProtocol.FLAG_VIDEO_MUTED;
-        if (inRoom) flags |= BleProtocol.FLAG_IN_ROOM;
+    /**
+     * Build a command status response using the given protocol version.
+     */
+    public static byte[] buildCommandStatusResponse(byte version, byte command, byte status, int batteryLevel,
+                                                     boolean micMuted, boolean videoMuted, boolean inRoom) {
+        // Payload: STATUS(1) + BATTERY(1) + FLAGS(1)
+        byte[] response = newResponse(version, command, 3);
 
-        int clampedBattery = Math.max(0, Math.min(100, batteryLevel));
+        response[3] = status;
+        response[4] = clampBattery(batteryLevel);
+        response[5] = stateFlags(micMuted, videoMuted, inRoom);
 
-        response[0] = BleProtocol.PROTOCOL_VERSION;
-        response[1] = (byte) (command | BleProtocol.RESPONSE_MASK);
-        response[2] = 3; // Payload length (status + battery + flags)
+        return seal(response);
+    }
+
+    /**
+     * Build a GET_STATUS_EX response: the command status fields plus charging state
+     * and battery temperature.
+     *
+     * @param version          The protocol version to frame the response with
+     * @param status           The status code (usually STATUS_OK)
+     * @param batteryLevel     Battery level percentage (0-100)
+     * @param micMuted         True if microphone is muted
+     * @param videoMuted       True if video is muted
+     * @param inRoom           True if currently in a room
+     * @param charging         True if the battery is charging
+     * @param temperatureDeciC Battery temperature in tenths of a degree Celsius,
+     *                         or BleProtocol.TEMPERATURE_UNKNOWN
+     * @return The complete response packet
+     */
+    public static byte[] buildExtendedStatusResponse(byte version, byte status, int batteryLevel,
+                                                     boolean micMuted, boolean videoMuted, boolean inRoom,
+                                                     boolean charging, int temperatureDeciC) {
+        // Payload: STATUS(1) + BATTERY(1) + FLAGS(1) + CHARGING(1) + TEMPERATURE(2)
+        byte[] response = newResponse(version, BleProtocol.CMD_GET_STATUS_EX, 6);
+
+        short temperature = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, temperatureDeciC));
         response[3] = status;
-        response[4] = (byte) clampedBattery;
-        response[5] = flags;
-        response[6] = BleProtocol.calculateChecksum(response, 6);
+        response[4] = clampBattery(batteryLevel);
+        response[5] = stateFlags(micMuted, videoMuted, inRoom);
+        response[6] = (byte) (charging ? 1 : 0);
+        response[7] = (byte) (temperature >>> 8);
+        response[8] = (byte) temperature;
 
-        return response;
+        return seal(response);
+    }
+
+    /**
+     * Build an unsolicited STATE_CHANGED notification with the current device state.
+     *
+     * @param version      The protocol version negotiated with the receiving device
+     * @param batteryLevel Battery level percentage (0-100)
+     * @param micMuted     True if microphone is muted
+     * @param videoMuted   True if video is muted
+     * @param inRoom       True if currently in a room
+     * @return The complete notification packet
+     */
+    public static byte[] buildStateChangedNotification(byte version, int batteryLevel,
+                                                       boolean micMuted, boolean videoMuted, boolean inRoom) {
+        return buildCommandStatusResponse(version, BleProtocol.CMD_STATE_CHANGED, BleProtocol.STATUS_OK,
+                batteryLevel, micMuted, videoMuted, inRoom);
+    }
+
+    /**
+     * Build a GET_METRICS response with p50/p99 of every stage for the requested commands.
+     *
+     * @param version The protocol version to frame the response with
+     * @param metrics The recorded per-command metrics
+     * @param filter  Unsigned command byte to report, or -1 for every command seen so far
+     * @return The complete response packet
+     */
+    public static byte[] buildMetricsResponse(byte version, CommandMetrics metrics, int filter) {
+        int count = 0;
+        byte[] commands = new byte[BleProtocol.MAX_METRICS_ENTRIES];
+        for (int i = 0; i < 256 && count < commands.length; i++) {
+            byte command = (byte) i;
+            if ((filter < 0 || filter == i) && metrics.hasSamples(command)) {
+                commands[count++] = command;
+            }
+        }
+
+        // Payload: STATUS(1) + COUNT(1) + ENTRY(19) * count
+        byte[] response = newResponse(version, BleProtocol.CMD_GET_METRICS,
+                2 + BleProtocol.METRICS_ENTRY_SIZE * count);
+        response[3] = BleProtocol.STATUS_OK;
+        response[4] = (byte) count;
+
+        int pos = 5;
+        for (int i = 0; i < count; i++) {
+            byte command = commands[i];
+            response[pos++] = command;
+            pos = putUnsignedShort(response, pos, metrics.getCount(command));
+            for (int stage = 0; stage < CommandMetrics.STAGE_COUNT; stage++) {
+                pos = putUnsignedShort(response, pos,
+                        metrics.getPercentileMicros(command, stage, 50) / BleProtocol.METRICS_UNIT_MICROS);
+                pos = putUnsignedShort(response, pos,
+                        metrics.getPercentileMicros(command, stage, 99) / BleProtocol.METRICS_UNIT_MICROS);
+            }
+        }
+
+        return seal(response);
+    }
+
+    /**
+     * Build the aggregated response for a BATCH command.
+     *
+     * @param version      The protocol version to frame the response with
+     * @param commands     Sub-command bytes in execution order
+     * @param statuses     Status of each sub-command, parallel to {@code commands}
+     * @param count        Number of valid entries in the arrays
+     * @param batteryLevel Battery level percentage (0-100)
+     * @param micMuted     True if microphone is muted after the batch
+     * @param videoMuted   True if video is muted after the batch
+     * @param inRoom       True if in a room after the batch
+     * @return The complete response packet
+     */
+    public static byte[] buildBatchResponse(byte version, byte[] commands, byte[] statuses, int count,
+                                            int batteryLevel, boolean micMuted, boolean videoMuted,
+                                            boolean inRoom) {
+        // Payload: STATUS(1) + COUNT(1) + (CMD(1) + STATUS(1)) * count + BATTERY(1) + FLAGS(1)
+        byte[] response = newResponse(version, BleProtocol.CMD_BATCH, 4 + 2 * count);
+
+        byte overall = BleProtocol.STATUS_OK;
+        int pos = 5;
+        for (int i = 0; i < count; i++) {
+            response[pos++] = commands[i];
+            response[pos++] = statuses[i];
+            if (statuses[i] != BleProtocol.STATUS_OK) {
+                overall = BleProtocol.STATUS_ERROR;
+            }
+        }
+
+        response[3] = overall;
+        response[4] = (byte) count;
+        response[pos++] = clampBattery(batteryLevel);
+        response[pos] = stateFlags(micMuted, videoMuted, inRoom);
+
+        return seal(response);
     }
 
     /**
@@ -124,4 +238,210 @@ public final class BleResponseBuilder {
     public static byte[] buildPongResponse() {
         return buildAckResponse(BleProtocol.CMD_PING, BleProtocol.STATUS_OK);
     }
+
+    /**
+     * Build a PING response (PONG) using the given protocol version.
+     */
+    public static byte[] buildPongResponse(byte version) {
+        return buildAckResponse(version, BleProtocol.CMD_PING, BleProtocol.STATUS_OK);
+    }
+
+    /**
+     * Build the PONG for a timestamped PING (see BleProtocol.CAP_PING_TIMESTAMP).
+     *
+     * @param sentMicros     t1: the controller's send time, echoed
+     * @param receivedMicros t2: when the PING was received here
+     * @param replyMicros    t3: when this PONG was built
+     */
+    public static byte[] buildTimestampedPongResponse(byte version, long sentMicros,
+                                                      long receivedMicros, long replyMicros) {
+        byte[] response = newResponse(version, BleProtocol.CMD_PING, 1 + 3 * BleProtocol.PING_TIMESTAMP_SIZE);
+        response[3] = BleProtocol.STATUS_OK;
+        putLong(response, 4, sentMicros);
+        putLong(response, 12, receivedMicros);
+        putLong(response, 20, replyMicros);
+        return seal(response);
+    }
+
+    /**
+     * Build a HELLO response announcing the negotiated version and capabilities.
+     *
+     * @param version           The framing version of this packet (the one the HELLO used)
+     * @param negotiatedVersion The version both sides switch to after this exchange
+     * @param capabilities      The agreed capability bits
+     * @return The complete response packet
+     */
+    public static byte[] buildHelloResponse(byte version, byte negotiatedVersion, byte capabilities) {
+        byte[] response = newResponse(version, BleProtocol.CMD_HELLO, 3);
+        response[3] = BleProtocol.STATUS_OK;
+        response[4] = negotiatedVersion;
+        response[5] = capabilities;
+        return seal(response);
+    }
+
+    /**
+     * Build an XFER_OFFER response telling the controller where to start and how fast to send.
+     *
+     * @param resumeOffset Offset to continue from (0 for a new transfer)
+     * @param window       Chunks the controller may send beyond the last acked offset
+     * @param maxChunk     Largest chunk data per XFER_CHUNK
+     * @return The complete response packet
+     */
+    public static byte[] buildXferOfferResponse(byte version, byte status, int transferId,
+                                                int resumeOffset, int window, int maxChunk) {
+        byte[] response = newResponse(version, BleProtocol.CMD_XFER_OFFER, 8);
+        response[3] = status;
+        response[4] = (byte) transferId;
+        putInt(response, 5, resumeOffset);
+        response[9] = (byte) window;
+        response[10] = (byte) maxChunk;
+        return seal(response);
+    }
+
+    /**
+     * Build an XFER_ACK notification acknowledging every byte before ackedOffset.
+     *
+     * @return The complete notification packet
+     */
+    public static byte[] buildXferAck(byte version, byte status, int transferId, int ackedOffset) {
+        byte[] response = newResponse(version, BleProtocol.CMD_XFER_ACK, 6);
+        response[3] = status;
+        response[4] = (byte) transferId;
+        putInt(response, 5, ackedOffset);
+        return seal(response);
+    }
+
+    /**
+     * Build a JOIN_PROGRESS notification for a join entering a phase.
+     *
+     * @param phase     One of BleProtocol.JOIN_PHASE_*
+     * @param elapsedMs Time since the join was accepted, saturating at 2^32-1
+     */
+    public static byte[] buildJoinProgressNotification(byte version, int phase, long elapsedMs) {
+        byte[] response = newResponse(version, BleProtocol.CMD_JOIN_PROGRESS, 7);
+        response[3] = BleProtocol.STATUS_OK;
+        response[4] = (byte) phase;
+        response[5] = (byte) BleProtocol.JOIN_PHASE_COUNT;
+        putInt(response, 6, (int) Math.min(elapsedMs, 0xFFFFFFFFL));
+        return seal(response);
+    }
+
+    /**
+     * Build the status beacon carried in advertisement service data.
+     * Not a frame: there is no header or checksum, the advertisement has its own CRC.
+     *
+     * @return [beaconVersion][flags][batteryLevel]
+     */
+    public static byte[] buildStatusBeacon(int batteryLevel, boolean micMuted,
+                                           boolean videoMuted, boolean inRoom) {
+        byte[] beacon = new byte[BleProtocol.BEACON_SIZE];
+        beacon[0] = BleProtocol.BEACON_VERSION;
+        beacon[1] = stateFlags(micMuted, videoMuted, inRoom);
+        beacon[2] = clampBattery(batteryLevel);
+        return beacon;
+    }
+
+    // ==================== Framing ====================
+
+    /**
+     * Tag a response with the request ID of the command it answers: sets
+     * FRAME_FLAG_REQUEST_ID and inserts the ID before the checksum.
+     *
+     * @param response  A complete response packet without a request ID
+     * @param requestId The ID to echo, or BleProtocol.NO_REQUEST_ID
+     * @return {@code response} itself if there is no ID, otherwise a re-sealed copy
+     */
+    public static byte[] withRequestId(byte[] response, int requestId) {
+        if (requestId == BleProtocol.NO_REQUEST_ID) {
+            return response;
+        }
+        int body = response.length - BleProtocol.checksumSize(frameVersion(response));
+        byte[] tagged = new byte[response.length + 1];
+        System.arraycopy(response, 0, tagged, 0, body);
+        tagged[0] = (byte) (response[0] | BleProtocol.FRAME_FLAG_REQUEST_ID);
+        tagged[body] = (byte) requestId;
+        return seal(tagged);
+    }
+
+    /**
+     * Build the state flags byte (bit0=micMuted, bit1=videoMuted, bit2=inRoom).
+     */
+    static byte stateFlags(boolean micMuted, boolean videoMuted, boolean inRoom) {
+        byte flags = 0;
+        if (micMuted) flags |= BleProtocol.FLAG_MIC_MUTED;
+        if (videoMuted) flags |= BleProtocol.FLAG_VIDEO_MUTED;
+        if (inRoom) flags |= BleProtocol.FLAG_IN_ROOM;
+        return flags;
+    }
+
+    /**
+     * Write a big-endian 16-bit value, saturating at 0xFFFF.
+     *
+     * @return The position after the written value
+     */
+    private static int putUnsignedShort(byte[] buffer, int pos, long value) {
+        int clamped = (int) Math.max(0, Math.min(0xFFFF, value));
+        buffer[pos] = (byte) (clamped >>> 8);
+        buffer[pos + 1] = (byte) clamped;
+        return pos + 2;
+    }
+
+    /**
+     * Write a big-endian 64-bit value.
+     */
+    private static void putLong(byte[] buffer, int pos, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[pos + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Write a big-endian 32-bit value.
+     */
+    private static void putInt(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) (value >>> 24);
+        buffer[pos + 1] = (byte) (value >>> 16);
+        buffer[pos + 2] = (byte) (value >>> 8);
+        buffer[pos + 3] = (byte) value;
+    }
+
+    /**
+     * Clamp battery level to the valid 0-100 range.
+     */
+    private static byte clampBattery(int batteryLevel) {
+        return (byte) Math.max(0, Math.min(100, batteryLevel));
+    }
+
+    /**
+     * Allocate a response packet and fill in its header.
+     */
+    private static byte[] newResponse(byte version, byte command, int payloadLength) {
+        byte[] response = new byte[3 + payloadLength + BleProtocol.checksumSize(version)];
+        response[0] = version;
+        response[1] = (byte) (command | BleProtocol.RESPONSE_MASK);
+        response[2] = (byte) payloadLength;
+        return response;
+    }
+
+    /**
+     * Get the protocol version of a packet, without the frame flags.
+     */
+    private static byte frameVersion(byte[] packet) {
+        return (byte) (packet[0] & BleProtocol.VERSION_MASK);
+    }
+
+    /**
+     * Write the trailing checksum (v1) or CRC-16 (v2) over everything before it.
+     */
+    private static byte[] seal(byte[] response) {
+        if (frameVersion(response) == BleProtocol.PROTOCOL_VERSION_2) {
+            int crc = BleProtocol.calculateCrc16(response, 0, response.length - 2);
+            response[response.length - 2] = (byte) (crc >>> 8);
+            response[response.length - 1] = (byte) crc;
+        } else {
+            response[response.length - 1] = BleProtocol.calculateChecksum(response, response.length - 1);
+        }
+        return response;
+    }
 }
@@ -0,0 +1,64 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Moves raw protocol packets between BleProtocolEngine and connected controllers.
+ *
+ * Implementations:
+ * - BleGattTransport: Android GATT server (write characteristic in, notifications out)
+ * - TcpLoopbackTransport: length-prefixed packets over TCP, for simulators and load tests
+ * - InMemoryTransport: direct calls, for tests and benchmarks on the JVM
+ *
+ * Devices are identified by an address string that is unique per connection.
+ * Callbacks may arrive on any thread; the engine hands them to its command thread.
+ */
+public interface BleTransport {
+
+    /**
+     * Events from the transport to the engine.
+     */
+    interface Callback {
+        void onDeviceConnected(String address, String name);
+
+        void onDeviceDisconnected(String address);
+
+        /**
+         * A packet (a complete frame or one fragment) was received from a device.
+         *
+         * @param receivedAtNanos System.nanoTime() taken when the packet arrived
+         */
+        void onPacketReceived(String address, byte[] packet, long receivedAtNanos);
+
+        /**
+         * The device subscribed to or unsubscribed from outbound packets.
+         */
+        void onSubscriptionChanged(String address, boolean subscribed);
+
+        void onMtuChanged(String address, int mtu);
+
+        /**
+         * A packet accepted by send() has left the transport (or failed to).
+         */
+        void onPacketSent(String address, boolean success);
+    }
+
+    /**
+     * Start accepting connections.
+     *
+     * @return true if started, false otherwise
+     */
+    boolean start(Callback callback);
+
+    /**
+     * Stop and drop all connections. No callbacks are made after this returns.
+     */
+    void stop();
+
+    /**
+     * Send one packet to a device. Called on the engine's command thread, with at
+     * most the notification window of packets outstanding per device.
+     *
+     * @return true if accepted (completion follows via onPacketSent()), false if the
+     *         transport is busy and the packet should be retried
+     */
+    boolean send(String address, byte[] packet);
+}
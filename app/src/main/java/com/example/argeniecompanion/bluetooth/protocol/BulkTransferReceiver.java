@@ -0,0 +1,281 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Receiving side of the bulk-transfer sub-protocol (XFER_OFFER, XFER_CHUNK, XFER_ACK,
+ * XFER_CANCEL; see BleProtocol for the wire format).
+ *
+ * A controller offers a named blob, then streams MTU-sized chunks with
+ * write-without-response, keeping at most XFER_WINDOW chunks beyond the last acked
+ * offset. Chunks must arrive in order: the first out-of-order chunk triggers an ack
+ * with the expected offset and the controller goes back to it. Transfers interrupted
+ * by a disconnect or a new offer are kept, so the same device offering the same name
+ * and size again resumes where the last ack left off.
+ *
+ * Each device has at most one active transfer, held by its session.
+ *
+ * Thread Safety: Command thread only; the counters may be read from any thread.
+ */
+public class BulkTransferReceiver {
+
+    private static final String TAG = "BulkTransferReceiver";
+
+    // Interrupted transfers kept for resume; the oldest is dropped first
+    private static final int MAX_SUSPENDED = 4;
+
+    /**
+     * Receives completed transfers. Called on the command thread, so heavy
+     * work (parsing, writing files) should be handed off.
+     */
+    public interface Listener {
+        void onTransferComplete(String deviceAddress, String name, byte[] data);
+    }
+
+    /**
+     * One incoming transfer and its progress.
+     */
+    static final class Transfer {
+        private int id;
+        private final String name;
+        private final byte[] data;
+        private int received;
+        private int chunksSinceAck;
+        private boolean gapReported;
+
+        // Start of the current run (offer or resume), for throughput
+        private long runStartNanos;
+        private int runStartOffset;
+
+        Transfer(int id, String name, int size) {
+            this.id = id;
+            this.name = name;
+            this.data = new byte[size];
+        }
+
+        int getReceived() {
+            return received;
+        }
+
+        private void startRun(int id) {
+            this.id = id;
+            this.chunksSinceAck = 0;
+            this.gapReported = false;
+            this.runStartNanos = System.nanoTime();
+            this.runStartOffset = received;
+        }
+
+        @Override
+        public String toString() {
+            return "'" + name + "' #" + id + " " + received + "/" + data.length;
+        }
+    }
+
+    private final ProtocolLogger log;
+    private volatile Listener listener;
+
+    private final Map<String, Transfer> suspended = new LinkedHashMap<String, Transfer>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Transfer> eldest) {
+            return size() > MAX_SUSPENDED;
+        }
+    };
+
+    private volatile long bytesReceived;
+    private volatile int completedCount;
+    private volatile long lastThroughputBytesPerSecond;
+
+    public BulkTransferReceiver(ProtocolLogger log) {
+        this.log = log;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Get the number of chunk bytes accepted so far, over all transfers.
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Get the throughput of the last completed transfer (since its last offer), or 0.
+     */
+    public long getLastThroughputBytesPerSecond() {
+        return lastThroughputBytesPerSecond;
+    }
+
+    /**
+     * Handle XFER_OFFER: start a new transfer or resume an interrupted one.
+     */
+    byte offer(BleDeviceSession session, ParsedCommand parsed) {
+        int id = parsed.getPayloadByte(0) & 0xFF;
+        int size = readInt(parsed, 1);
+        int nameLength = parsed.getPayloadByte(5) & 0xFF;
+        String name = new String(parsed.getSource(), parsed.getPayloadOffset() + 6, nameLength,
+                StandardCharsets.UTF_8);
+
+        if (size <= 0 || size > BleProtocol.MAX_XFER_SIZE) {
+            log.w(TAG, "Rejected offer '" + name + "' of " + size + " bytes");
+            return BleProtocol.STATUS_INVALID_PAYLOAD;
+        }
+
+        suspend(session);
+        Transfer transfer = suspended.remove(key(session.getAddress(), name, size));
+        if (transfer == null) {
+            transfer = new Transfer(id, name, size);
+        }
+        transfer.startRun(id);
+        session.setTransfer(transfer);
+
+        log.i(TAG, (transfer.received > 0 ? "Resuming " : "Receiving ") + transfer
+                + " from " + session.getAddress());
+        return BleProtocol.STATUS_OK;
+    }
+
+    /**
+     * Get the offset an accepted offer starts from.
+     */
+    int getResumeOffset(BleDeviceSession session) {
+        Transfer transfer = session.getTransfer();
+        return transfer != null ? transfer.received : 0;
+    }
+
+    /**
+     * Get the largest chunk data that keeps an XFER_CHUNK frame within one ATT write
+     * at the session's MTU and frame version.
+     */
+    static int maxChunk(BleDeviceSession session) {
+        int room = session.getMtu() - BleProtocol.ATT_HEADER_SIZE - 3
+                - BleProtocol.checksumSize(session.getVersion()) - BleProtocol.XFER_CHUNK_HEADER_SIZE;
+        return Math.max(1, Math.min(255 - BleProtocol.XFER_CHUNK_HEADER_SIZE, room));
+    }
+
+    /**
+     * Handle XFER_CHUNK: store in-order data and decide whether an ack is due.
+     *
+     * @return The XFER_ACK to send, or null if none is due
+     */
+    byte[] onChunk(BleDeviceSession session, ParsedCommand parsed) {
+        int id = parsed.getPayloadByte(0) & 0xFF;
+        int offset = readInt(parsed, 1);
+        int length = parsed.getPayloadLength() - BleProtocol.XFER_CHUNK_HEADER_SIZE;
+
+        Transfer transfer = session.getTransfer();
+        if (transfer == null || transfer.id != id) {
+            return BleResponseBuilder.buildXferAck(session.getVersion(), BleProtocol.STATUS_NOT_CONNECTED, id, 0);
+        }
+
+        if (offset != transfer.received) {
+            // Duplicates are dropped; a gap is reported once so the controller goes back
+            if (offset < transfer.received || transfer.gapReported) {
+                return null;
+            }
+            transfer.gapReported = true;
+            transfer.chunksSinceAck = 0;
+            return ack(session, transfer, BleProtocol.STATUS_OK);
+        }
+        if (offset + length > transfer.data.length) {
+            return ack(session, transfer, BleProtocol.STATUS_INVALID_PAYLOAD);
+        }
+
+        System.arraycopy(parsed.getSource(), parsed.getPayloadOffset() + BleProtocol.XFER_CHUNK_HEADER_SIZE,
+                transfer.data, offset, length);
+        transfer.received += length;
+        transfer.gapReported = false;
+        bytesReceived += length;
+
+        if (transfer.received == transfer.data.length) {
+            session.setTransfer(null);
+            complete(session, transfer);
+            return ack(session, transfer, BleProtocol.STATUS_OK);
+        }
+        if (++transfer.chunksSinceAck >= BleProtocol.XFER_WINDOW / 2) {
+            transfer.chunksSinceAck = 0;
+            return ack(session, transfer, BleProtocol.STATUS_OK);
+        }
+        return null;
+    }
+
+    /**
+     * Handle XFER_CANCEL: drop the active transfer, data included.
+     */
+    byte cancel(BleDeviceSession session, ParsedCommand parsed) {
+        int id = parsed.getPayloadByte(0) & 0xFF;
+        Transfer transfer = session.getTransfer();
+        if (transfer == null || transfer.id != id) {
+            return BleProtocol.STATUS_NOT_CONNECTED;
+        }
+        session.setTransfer(null);
+        log.i(TAG, "Cancelled " + transfer);
+        return BleProtocol.STATUS_OK;
+    }
+
+    /**
+     * Keep a closing session's unfinished transfer so a reconnect can resume it.
+     */
+    void onSessionClosed(BleDeviceSession session) {
+        suspend(session);
+    }
+
+    /**
+     * Drop all interrupted transfers, e.g. when the engine stops.
+     */
+    void clear() {
+        suspended.clear();
+    }
+
+    private void suspend(BleDeviceSession session) {
+        Transfer transfer = session.getTransfer();
+        if (transfer != null) {
+            session.setTransfer(null);
+            suspended.put(key(session.getAddress(), transfer.name, transfer.data.length), transfer);
+            log.i(TAG, "Suspended " + transfer);
+        }
+    }
+
+    private void complete(BleDeviceSession session, Transfer transfer) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - transfer.runStartNanos);
+        long bytes = transfer.data.length - transfer.runStartOffset;
+        lastThroughputBytesPerSecond = bytes * 1_000_000_000L / elapsedNanos;
+        completedCount++;
+
+        log.i(TAG, "Received " + transfer + " in " + elapsedNanos / 1_000_000 + " ms ("
+                + lastThroughputBytesPerSecond + " B/s)");
+
+        Listener current = listener;
+        if (current != null) {
+            current.onTransferComplete(session.getAddress(), transfer.name, transfer.data);
+        }
+    }
+
+    private static byte[] ack(BleDeviceSession session, Transfer transfer, byte status) {
+        return BleResponseBuilder.buildXferAck(session.getVersion(), status, transfer.id, transfer.received);
+    }
+
+    // Keyed by device too, so one controller cannot resume another's partial data
+    private static String key(String address, String name, int size) {
+        return address + '/' + name + '/' + size;
+    }
+
+    private static int readInt(ParsedCommand parsed, int index) {
+        return (parsed.getPayloadByte(index) & 0xFF) << 24
+                | (parsed.getPayloadByte(index + 1) & 0xFF) << 16
+                | (parsed.getPayloadByte(index + 2) & 0xFF) << 8
+                | (parsed.getPayloadByte(index + 3) & 0xFF);
+    }
+
+    @Override
+    public String toString() {
+        return "completed=" + completedCount + ", bytes=" + bytesReceived
+                + ", lastThroughput=" + lastThroughputBytesPerSecond + " B/s";
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Priority lanes for received packets. The command thread always takes the oldest
+ * packet of the highest non-empty lane, so liveness probes never wait behind
+ * session setup or bulk data.
+ *
+ * Packets in the same lane keep their arrival order; packets in different lanes may
+ * be answered out of order (request IDs let controllers match the replies).
+ */
+public enum CommandLane {
+    /** PING, GET_STATUS, HELLO and other cheap queries; also malformed packets. */
+    CONTROL,
+    /** Mute toggles, BATCH and legacy text messages. */
+    INTERACTIVE,
+    /** JOIN_ROOM/LEAVE_ROOM, bulk transfers and fragmented frames. */
+    BACKGROUND
+}
@@ -0,0 +1,141 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Per-command latency histograms, split into the stages a command goes through:
+ *
+ *   write ──QUEUE──▶ dispatch ──HANDLER──▶ handled ──SEND──▶ notification sent
+ *   └──────────────────────────TOTAL──────────────────────────┘
+ *
+ * QUEUE:   GATT write callback until the command thread dispatches the frame, or
+ *          the sub-command for the commands inside a BATCH
+ * HANDLER: executeCommand(), including the BleCommandListener callback
+ * SEND:    reply built until the stack reports its (last) notification as sent
+ * TOTAL:   GATT write callback until the reply notification is sent
+ *
+ * Deferred commands (JOIN_ROOM/LEAVE_ROOM) have no immediate reply, so they only
+ * record QUEUE and HANDLER. Histograms are allocated the first time a command is seen.
+ *
+ * Thread Safety: Recording happens on the command thread; reading may happen anywhere.
+ */
+public class CommandMetrics {
+
+    public static final int STAGE_QUEUE = 0;
+    public static final int STAGE_HANDLER = 1;
+    public static final int STAGE_SEND = 2;
+    public static final int STAGE_TOTAL = 3;
+    public static final int STAGE_COUNT = 4;
+
+    private static final String[] STAGE_NAMES = {"queue", "handler", "send", "total"};
+
+    /**
+     * Timestamps of one command on its way through the server, attached to its reply.
+     * Samples are preallocated and reused once their reply has left the queue.
+     */
+    public static final class Sample {
+        byte command;
+        long receivedAtNanos;
+        long handledAtNanos;
+
+        public void start(byte command, long receivedAtNanos) {
+            this.command = command;
+            this.receivedAtNanos = receivedAtNanos;
+            this.handledAtNanos = 0;
+        }
+
+        public void markHandled(long nanos) {
+            this.handledAtNanos = nanos;
+        }
+    }
+
+    // Indexed by unsigned command byte, then stage
+    private final LatencyHistogram[][] histograms = new LatencyHistogram[256][];
+
+    /**
+     * Record the duration of one stage for a command.
+     */
+    public void record(byte command, int stage, long nanos) {
+        histogramsFor(command)[stage].recordNanos(nanos);
+    }
+
+    /**
+     * Record SEND and TOTAL once the reply for a sample has been sent.
+     */
+    public void onReplySent(Sample sample, long sentAtNanos) {
+        LatencyHistogram[] stages = histogramsFor(sample.command);
+        if (sample.handledAtNanos != 0) {
+            stages[STAGE_SEND].recordNanos(sentAtNanos - sample.handledAtNanos);
+        }
+        stages[STAGE_TOTAL].recordNanos(sentAtNanos - sample.receivedAtNanos);
+    }
+
+    /**
+     * Check if anything was recorded for a command.
+     */
+    public boolean hasSamples(byte command) {
+        return existing(command) != null;
+    }
+
+    /**
+     * Get the number of times a command was dispatched, on its own or inside a BATCH.
+     */
+    public long getCount(byte command) {
+        LatencyHistogram[] stages = existing(command);
+        return stages != null
+                ? Math.max(stages[STAGE_QUEUE].getCount(), stages[STAGE_HANDLER].getCount())
+                : 0;
+    }
+
+    /**
+     * Get a percentile of one stage for a command, in microseconds (0 if no samples).
+     */
+    public long getPercentileMicros(byte command, int stage, double percentile) {
+        LatencyHistogram[] stages = existing(command);
+        return stages != null ? stages[stage].getPercentileMicros(percentile) : 0;
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public synchronized void reset() {
+        for (LatencyHistogram[] stages : histograms) {
+            if (stages != null) {
+                for (LatencyHistogram histogram : stages) {
+                    histogram.reset();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram[] stages = existing((byte) i);
+            if (stages == null) {
+                continue;
+            }
+            sb.append(BleProtocol.getCommandName((byte) i)).append(':');
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                sb.append(' ').append(STAGE_NAMES[stage]).append('[').append(stages[stage]).append(']');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private synchronized LatencyHistogram[] existing(byte command) {
+        return histograms[command & 0xFF];
+    }
+
+    private synchronized LatencyHistogram[] histogramsFor(byte command) {
+        LatencyHistogram[] stages = histograms[command & 0xFF];
+        if (stages == null) {
+            stages = new LatencyHistogram[STAGE_COUNT];
+            for (int i = 0; i < STAGE_COUNT; i++) {
+                stages[i] = new LatencyHistogram();
+            }
+            histograms[command & 0xFF] = stages;
+        }
+        return stages;
+    }
+}
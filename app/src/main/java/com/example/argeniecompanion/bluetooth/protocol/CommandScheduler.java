@@ -0,0 +1,141 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Orders received packets for the command thread by CommandLane.
+ *
+ * Transport threads submit() each packet into the lane of its opcode and post one
+ * drain task per packet; each drain task on the command thread takes the next packet
+ * of the highest non-empty lane. The command thread stays the only consumer, so the
+ * engine's single-threaded state model is unchanged.
+ *
+ * The lane is picked from the raw packet, before reassembly:
+ * - Complete binary frames use the lane registered for their opcode
+ * - Fragments go to BACKGROUND, so the fragments of one frame stay in order
+ * - While a device is partway through a fragmented frame, or has fragments waiting,
+ *   its other packets go to BACKGROUND behind them: overtaking the remaining
+ *   fragments would interrupt the frame
+ * - Legacy text messages go to INTERACTIVE
+ * - Anything unparseable goes to CONTROL, so its error reply is immediate
+ *
+ * Each lane records how long its packets waited for the command thread.
+ *
+ * Thread Safety: submit() may be called from any thread, but the packets of one device
+ * in the order they were received; next() and clear() only on the command thread.
+ */
+final class CommandScheduler {
+
+    private static final CommandLane[] LANES = CommandLane.values();
+
+    /**
+     * A received packet waiting for the command thread.
+     */
+    static final class Entry {
+        final BleDeviceSession session;
+        final byte[] packet;
+        final long receivedAtNanos;
+        // Queued in BACKGROUND to stay behind the device's fragments
+        final boolean pinned;
+
+        Entry(BleDeviceSession session, byte[] packet, long receivedAtNanos, boolean pinned) {
+            this.session = session;
+            this.packet = packet;
+            this.receivedAtNanos = receivedAtNanos;
+            this.pinned = pinned;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Queue<Entry>[] queues = new Queue[LANES.length];
+    private final LatencyHistogram[] queueLatency = new LatencyHistogram[LANES.length];
+
+    CommandScheduler() {
+        for (int i = 0; i < LANES.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+            queueLatency[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Queue a received packet in its lane.
+     */
+    void submit(BleDeviceSession session, byte[] packet, long receivedAtNanos) {
+        boolean fragment = BleFragmenter.isFragment(packet);
+        if (fragment || session.isReceivingFragments() || session.getPinnedPackets() > 0) {
+            // A fragment without MORE, or any other packet, ends the frame in progress
+            session.setReceivingFragments(fragment
+                    && (packet[1] & BleProtocol.FRAGMENT_FLAG_MORE) != 0);
+            session.pinPacket();
+            queues[CommandLane.BACKGROUND.ordinal()].add(new Entry(session, packet, receivedAtNanos, true));
+            return;
+        }
+        queues[laneOf(packet).ordinal()].add(new Entry(session, packet, receivedAtNanos, false));
+    }
+
+    /**
+     * Take the oldest packet of the highest-priority non-empty lane.
+     *
+     * @return The packet, or null if every lane is empty
+     */
+    Entry next() {
+        for (int i = 0; i < queues.length; i++) {
+            Entry entry = queues[i].poll();
+            if (entry != null) {
+                queueLatency[i].recordNanos(System.nanoTime() - entry.receivedAtNanos);
+                release(entry);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop every waiting packet.
+     */
+    void clear() {
+        for (Queue<Entry> queue : queues) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                release(entry);
+            }
+        }
+    }
+
+    private static void release(Entry entry) {
+        if (entry.pinned) {
+            entry.session.unpinPacket();
+        }
+    }
+
+    /**
+     * Get the histogram of time packets in a lane waited for the command thread.
+     */
+    LatencyHistogram getQueueLatency(CommandLane lane) {
+        return queueLatency[lane.ordinal()];
+    }
+
+    static CommandLane laneOf(byte[] packet) {
+        if (BleFragmenter.isFragment(packet)) {
+            return CommandLane.BACKGROUND;
+        }
+        if (!LegacyTextProtocol.isBinaryPacket(packet)) {
+            return CommandLane.INTERACTIVE;
+        }
+        if (packet.length < BleProtocol.MIN_PACKET_SIZE) {
+            return CommandLane.CONTROL;
+        }
+        BleCommandRegistry.Spec spec = BleCommandRegistry.get(packet[1]);
+        return spec != null ? spec.getLane() : CommandLane.CONTROL;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (CommandLane lane : LANES) {
+            sb.append('\n').append(lane).append(": ").append(queueLatency[lane.ordinal()]);
+        }
+        return sb.toString();
+    }
+}
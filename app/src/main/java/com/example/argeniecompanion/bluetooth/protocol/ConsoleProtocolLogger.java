@@ -0,0 +1,56 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.io.PrintStream;
+
+/**
+ * ProtocolLogger for the JVM (tests, benchmarks, the desktop simulator):
+ * writes "LEVEL/tag: message" lines to a PrintStream, System.err by default.
+ */
+public class ConsoleProtocolLogger implements ProtocolLogger {
+
+    private final PrintStream out;
+    private final boolean debug;
+
+    public ConsoleProtocolLogger(boolean debug) {
+        this(System.err, debug);
+    }
+
+    public ConsoleProtocolLogger(PrintStream out, boolean debug) {
+        this.out = out;
+        this.debug = debug;
+    }
+
+    @Override
+    public boolean isDebugEnabled(String tag) {
+        return debug;
+    }
+
+    @Override
+    public void d(String tag, String message) {
+        if (debug) {
+            print("D", tag, message);
+        }
+    }
+
+    @Override
+    public void i(String tag, String message) {
+        print("I", tag, message);
+    }
+
+    @Override
+    public void w(String tag, String message) {
+        print("W", tag, message);
+    }
+
+    @Override
+    public void e(String tag, String message, Throwable error) {
+        print("E", tag, message);
+        if (error != null) {
+            error.printStackTrace(out);
+        }
+    }
+
+    private void print(String level, String tag, String message) {
+        out.println(level + "/" + tag + ": " + message);
+    }
+}
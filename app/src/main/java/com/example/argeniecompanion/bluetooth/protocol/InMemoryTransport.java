@@ -0,0 +1,92 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * BleTransport that connects BleProtocolEngine directly to code in the same process,
+ * for benchmarks, load tests and simulators on the JVM.
+ *
+ * The caller plays the controllers: connect() and disconnect() devices, write()
+ * packets as a controller would, and receive the engine's packets through a
+ * PacketListener. Every packet the engine sends completes immediately.
+ *
+ * Thread Safety: connect(), disconnect() and write() may be called from any thread;
+ * the PacketListener is called on the engine's command thread.
+ */
+public class InMemoryTransport implements BleTransport {
+
+    /**
+     * Receives the packets the engine sends to devices.
+     */
+    public interface PacketListener {
+        void onPacket(String address, byte[] packet);
+    }
+
+    private final int mtu;
+    private volatile Callback callback;
+    private volatile PacketListener packetListener;
+
+    /**
+     * @param mtu MTU reported for every connected device
+     */
+    public InMemoryTransport(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public void setPacketListener(PacketListener listener) {
+        this.packetListener = listener;
+    }
+
+    /**
+     * Connect a device that is subscribed to the engine's packets from the start.
+     */
+    public void connect(String address) {
+        Callback cb = requireCallback();
+        cb.onDeviceConnected(address, "in-memory");
+        cb.onMtuChanged(address, mtu);
+        cb.onSubscriptionChanged(address, true);
+    }
+
+    public void disconnect(String address) {
+        requireCallback().onDeviceDisconnected(address);
+    }
+
+    /**
+     * Deliver a packet from a device to the engine, as a GATT write would.
+     */
+    public void write(String address, byte[] packet) {
+        requireCallback().onPacketReceived(address, packet, System.nanoTime());
+    }
+
+    @Override
+    public boolean start(Callback callback) {
+        this.callback = callback;
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        callback = null;
+    }
+
+    @Override
+    public boolean send(String address, byte[] packet) {
+        Callback cb = callback;
+        if (cb == null) {
+            return false;
+        }
+
+        PacketListener listener = packetListener;
+        if (listener != null) {
+            listener.onPacket(address, packet);
+        }
+        cb.onPacketSent(address, true);
+        return true;
+    }
+
+    private Callback requireCallback() {
+        Callback cb = callback;
+        if (cb == null) {
+            throw new IllegalStateException("Transport not started");
+        }
+        return cb;
+    }
+}
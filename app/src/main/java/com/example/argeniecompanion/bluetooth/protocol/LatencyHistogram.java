@@ -0,0 +1,133 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size latency histogram with log-linear buckets, in microseconds.
+ *
+ * Values below 16 µs get one bucket each; above that every power of two is split
+ * into 8 linear sub-buckets, so any reported percentile is within 12.5% of the
+ * recorded value. The bucket array is allocated once, so recording never allocates.
+ *
+ * Thread-safe: recording and reading may happen on different threads.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_LIMIT = 16;        // values 0..15 map 1:1
+    private static final int SUB_BUCKET_BITS = 3;      // 8 sub-buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_MAGNITUDE = 4;      // log2(LINEAR_LIMIT)
+    private static final int MAX_MAGNITUDE = 36;       // ~19 hours; larger values are clamped
+
+    private static final int BUCKET_COUNT =
+            LINEAR_LIMIT + (MAX_MAGNITUDE - FIRST_MAGNITUDE + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long totalMicros;
+    private long maxMicros;
+
+    /**
+     * Record a latency given in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    /**
+     * Record a latency given in microseconds. Negative values are recorded as 0.
+     */
+    public synchronized void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts[bucketIndex(micros)]++;
+        totalCount++;
+        totalMicros += micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public synchronized long getMeanMicros() {
+        return totalCount == 0 ? 0 : totalMicros / totalCount;
+    }
+
+    /**
+     * Get the value at a percentile, reported as the upper bound of its bucket
+     * (never above the recorded maximum).
+     *
+     * @param percentile Percentile in the range 0-100
+     * @return The latency in microseconds, or 0 if nothing was recorded
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * totalCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "n=" + totalCount
+                + " mean=" + getMeanMicros() + "us"
+                + " p50=" + getPercentileMicros(50) + "us"
+                + " p90=" + getPercentileMicros(90) + "us"
+                + " p99=" + getPercentileMicros(99) + "us"
+                + " max=" + maxMicros + "us";
+    }
+
+    // ==================== Bucketing ====================
+
+    private static int bucketIndex(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (magnitude - FIRST_MAGNITUDE) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int magnitude = FIRST_MAGNITUDE + (index - LINEAR_LIMIT) / SUB_BUCKETS;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (magnitude - SUB_BUCKET_BITS);
+        return (1L << magnitude) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The original plain-text protocol, kept for controllers that predate the binary one.
+ *
+ * Controllers write UTF-8 strings to the same characteristic as binary frames:
+ * - "COMMAND:PING" is answered with "PONG"
+ * - "COMMAND:GET_STATUS" is answered with a ready message
+ * - Other commands get no reply
+ * - Anything else is echoed back as "Echo: <text>"
+ *
+ * BleProtocolEngine tells the two apart by the start of each write (see isBinaryPacket());
+ * well-formed UTF-8 text never looks like a binary frame or fragment.
+ */
+public final class LegacyTextProtocol {
+
+    public static final String MESSAGE_TYPE_COMMAND = "COMMAND";
+
+    public static final String CMD_PING = "PING";
+    public static final String CMD_GET_STATUS = "GET_STATUS";
+
+    private static final String COMMAND_PREFIX = MESSAGE_TYPE_COMMAND + ":";
+
+    private LegacyTextProtocol() {
+    }
+
+    /**
+     * Check whether a written packet starts a binary frame or fragment, as opposed to
+     * a text message: it has a fragment header (see BleFragmenter.isFragment()), or
+     * its first byte is a supported version with only supported frame flags.
+     * Text starting with a printable character never matches: version bytes are
+     * control characters or UTF-8 continuation bytes, and the UTF-8 lead byte 0xF0,
+     * which equals the fragment marker, is followed by a byte no fragment header has.
+     */
+    public static boolean isBinaryPacket(byte[] packet) {
+        if (packet.length == 0) {
+            // Let the binary parser reject it
+            return true;
+        }
+        if (BleFragmenter.isFragment(packet)) {
+            return true;
+        }
+        byte first = packet[0];
+        int flags = first & ~BleProtocol.VERSION_MASK & 0xFF;
+        return (flags & ~BleProtocol.SUPPORTED_FRAME_FLAGS) == 0
+                && BleProtocol.isSupportedVersion((byte) (first & BleProtocol.VERSION_MASK));
+    }
+
+    public static String decode(byte[] packet) {
+        return new String(packet, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build the reply to a text message, cut to fit one notification at the given MTU.
+     *
+     * @return The encoded reply, or null if the message needs none
+     */
+    public static byte[] buildReply(String message, int mtu) {
+        String reply;
+        if (message.startsWith(COMMAND_PREFIX)) {
+            String command = message.substring(COMMAND_PREFIX.length());
+            if (CMD_PING.equals(command)) {
+                reply = "PONG";
+            } else if (CMD_GET_STATUS.equals(command)) {
+                reply = "STATUS: Device B is ready";
+            } else {
+                return null;
+            }
+        } else {
+            reply = "Echo: " + message;
+        }
+
+        byte[] encoded = reply.getBytes(StandardCharsets.UTF_8);
+        int max = BleFragmenter.maxPacketSize(mtu);
+        if (encoded.length <= max) {
+            return encoded;
+        }
+        byte[] truncated = new byte[max];
+        System.arraycopy(encoded, 0, truncated, 0, max);
+        return truncated;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Rolling round-trip time and clock offset for one controller, fed by timestamped PINGs
+ * (see BleProtocol.CAP_PING_TIMESTAMP).
+ *
+ * Each PONG records the exchange (t1, t2, t3); the controller's next PING reports when
+ * that PONG arrived (t4), completing the four timestamps of an NTP-style sample.
+ * RTT and offset are smoothed with the same weight TCP uses for SRTT (RFC 6298).
+ * The offset of the lowest-RTT sample is kept as well: queuing delays are rarely
+ * symmetric, so the fastest exchange gives the most trustworthy offset.
+ *
+ * Use the offset to line up traces: glasses time = controller time + offset.
+ *
+ * Thread Safety: Updated on the command thread only; getters may be called from any thread.
+ */
+public class LinkClockEstimator {
+
+    // Weight of a new sample in the smoothed values
+    private static final double ALPHA = 0.125;
+
+    // Last exchange awaiting its t4 (command thread only)
+    private boolean pending;
+    private long lastSentMicros;
+    private long lastReceivedMicros;
+    private long lastReplyMicros;
+
+    private volatile int sampleCount;
+    private volatile long lastRttMicros;
+    private volatile double smoothedRttMicros;
+    private volatile double smoothedOffsetMicros;
+    private volatile long minRttMicros = Long.MAX_VALUE;
+    private volatile long minRttOffsetMicros;
+
+    /**
+     * Remember a PONG sent for a timestamped PING.
+     */
+    void onPong(long sentMicros, long receivedMicros, long replyMicros) {
+        pending = true;
+        lastSentMicros = sentMicros;
+        lastReceivedMicros = receivedMicros;
+        lastReplyMicros = replyMicros;
+    }
+
+    /**
+     * Complete the last exchange with the time its PONG arrived at the controller.
+     *
+     * @param sentMicros    t1 of the exchange being reported, to match it with the last PONG
+     * @param arrivedMicros t4, on the controller's clock
+     * @return The RTT sample in microseconds, or -1 if the report did not match
+     *         the last PONG or was inconsistent
+     */
+    long onReport(long sentMicros, long arrivedMicros) {
+        if (!pending || sentMicros != lastSentMicros) {
+            return -1;
+        }
+        pending = false;
+
+        long rtt = (arrivedMicros - lastSentMicros) - (lastReplyMicros - lastReceivedMicros);
+        if (rtt < 0) {
+            return -1;
+        }
+        long offset = ((lastReceivedMicros - lastSentMicros) + (lastReplyMicros - arrivedMicros)) / 2;
+
+        if (sampleCount == 0) {
+            smoothedRttMicros = rtt;
+            smoothedOffsetMicros = offset;
+        } else {
+            smoothedRttMicros += ALPHA * (rtt - smoothedRttMicros);
+            smoothedOffsetMicros += ALPHA * (offset - smoothedOffsetMicros);
+        }
+        if (rtt < minRttMicros) {
+            minRttMicros = rtt;
+            minRttOffsetMicros = offset;
+        }
+        lastRttMicros = rtt;
+        sampleCount++;
+        return rtt;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Get the smoothed round-trip time, or -1 before the first sample.
+     */
+    public long getSmoothedRttMicros() {
+        return sampleCount > 0 ? Math.round(smoothedRttMicros) : -1;
+    }
+
+    /**
+     * Get the latest round-trip time, or -1 before the first sample.
+     */
+    public long getLastRttMicros() {
+        return sampleCount > 0 ? lastRttMicros : -1;
+    }
+
+    /**
+     * Get the lowest round-trip time seen, or -1 before the first sample.
+     */
+    public long getMinRttMicros() {
+        return sampleCount > 0 ? minRttMicros : -1;
+    }
+
+    /**
+     * Get the smoothed offset (glasses time minus controller time), or 0 before the first sample.
+     */
+    public long getSmoothedOffsetMicros() {
+        return Math.round(smoothedOffsetMicros);
+    }
+
+    /**
+     * Get the offset measured by the lowest-RTT exchange, or 0 before the first sample.
+     */
+    public long getMinRttOffsetMicros() {
+        return minRttOffsetMicros;
+    }
+
+    @Override
+    public String toString() {
+        if (sampleCount == 0) {
+            return "no samples";
+        }
+        return "n=" + sampleCount + " rtt=" + getSmoothedRttMicros() + "us (min=" + minRttMicros
+                + "us, last=" + lastRttMicros + "us) offset=" + getSmoothedOffsetMicros()
+                + "us (at min rtt=" + minRttOffsetMicros + "us)";
+    }
+}
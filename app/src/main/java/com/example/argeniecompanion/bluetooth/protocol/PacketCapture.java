@@ -0,0 +1,270 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring buffer of raw BLE packets, both directions, for debugging and replay.
+ *
+ * Recording copies the packet into preallocated storage together with a timestamp,
+ * direction and device id; nothing is formatted until the capture is dumped. When
+ * full, the oldest packets are overwritten. Packets longer than MAX_PACKET_SIZE are
+ * truncated (their original length is kept).
+ *
+ * Export format (big-endian):
+ *   header: [magic "BCAP":4][formatVersion:1][recordCount:4]
+ *   record: [direction:1][deviceId:2][timestampNanos:8][originalLength:2][capturedLength:2][data:N]
+ * Timestamps are System.nanoTime() values; only their differences are meaningful.
+ *
+ * Thread Safety: All methods are synchronized.
+ */
+public class PacketCapture {
+
+    public static final int DIRECTION_IN = 0;
+    public static final int DIRECTION_OUT = 1;
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int MAX_PACKET_SIZE = BleProtocol.MAX_FRAME_SIZE;
+
+    private static final int MAGIC = 0x42434150; // "BCAP"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * One captured packet.
+     */
+    public static final class Record {
+        private final int direction;
+        private final int deviceId;
+        private final long timestampNanos;
+        private final int originalLength;
+        private final byte[] data;
+
+        public Record(int direction, int deviceId, long timestampNanos, int originalLength, byte[] data) {
+            this.direction = direction;
+            this.deviceId = deviceId;
+            this.timestampNanos = timestampNanos;
+            this.originalLength = originalLength;
+            this.data = data;
+        }
+
+        public int getDirection() {
+            return direction;
+        }
+
+        public int getDeviceId() {
+            return deviceId;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public int getOriginalLength() {
+            return originalLength;
+        }
+
+        /**
+         * Get the captured bytes (shorter than getOriginalLength() if truncated).
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        public boolean isTruncated() {
+            return data.length < originalLength;
+        }
+    }
+
+    private final int capacity;
+    private final byte[] data;
+    private final int[] lengths;
+    private final int[] originalLengths;
+    private final byte[] directions;
+    private final short[] deviceIds;
+    private final long[] timestamps;
+
+    private int next;      // Slot the next packet goes to
+    private int size;      // Number of slots in use
+    private long recorded; // Total packets recorded, including overwritten ones
+
+    public PacketCapture() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PacketCapture(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.data = new byte[capacity * MAX_PACKET_SIZE];
+        this.lengths = new int[capacity];
+        this.originalLengths = new int[capacity];
+        this.directions = new byte[capacity];
+        this.deviceIds = new short[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Record one packet. Does not allocate.
+     *
+     * @param direction DIRECTION_IN or DIRECTION_OUT
+     * @param deviceId  Small id of the device that sent or receives the packet
+     * @param timestampNanos System.nanoTime() of the write or notification
+     */
+    public synchronized void record(int direction, int deviceId, long timestampNanos, byte[] packet) {
+        int length = Math.min(packet.length, MAX_PACKET_SIZE);
+        System.arraycopy(packet, 0, data, next * MAX_PACKET_SIZE, length);
+        lengths[next] = length;
+        originalLengths[next] = packet.length;
+        directions[next] = (byte) direction;
+        deviceIds[next] = (short) deviceId;
+        timestamps[next] = timestampNanos;
+
+        next = (next + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+        recorded++;
+    }
+
+    /**
+     * Get the number of packets currently held.
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the total number of packets recorded, including overwritten ones.
+     */
+    public synchronized long getRecordedCount() {
+        return recorded;
+    }
+
+    public synchronized void clear() {
+        next = 0;
+        size = 0;
+        recorded = 0;
+    }
+
+    /**
+     * Copy the held packets, oldest first.
+     */
+    public synchronized List<Record> getRecords() {
+        List<Record> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            byte[] packet = new byte[lengths[slot]];
+            System.arraycopy(data, slot * MAX_PACKET_SIZE, packet, 0, packet.length);
+            records.add(new Record(directions[slot], deviceIds[slot] & 0xFFFF,
+                    timestamps[slot], originalLengths[slot], packet));
+        }
+        return records;
+    }
+
+    /**
+     * Format the held packets as text, oldest first, with times relative to the first packet.
+     */
+    public synchronized String dump() {
+        StringBuilder sb = new StringBuilder(size * 64);
+        long start = size > 0 ? timestamps[slot(0)] : 0;
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            long micros = (timestamps[slot] - start) / 1000;
+            sb.append('+').append(micros / 1000).append('.');
+            appendPadded(sb, micros % 1000);
+            sb.append("ms ")
+                    .append(directions[slot] == DIRECTION_IN ? "IN  #" : "OUT #")
+                    .append(deviceIds[slot] & 0xFFFF)
+                    .append(" [").append(originalLengths[slot]).append("] ")
+                    .append(BleCommandParser.toHexString(data, slot * MAX_PACKET_SIZE, lengths[slot]));
+            if (lengths[slot] < originalLengths[slot]) {
+                sb.append(" ...");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the held packets in the export format. The stream is not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeRecords(getRecords(), out);
+    }
+
+    /**
+     * Write records in the export format. The stream is not closed.
+     */
+    public static void writeRecords(List<Record> records, OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(MAGIC);
+        dos.writeByte(FORMAT_VERSION);
+        dos.writeInt(records.size());
+        for (Record record : records) {
+            dos.writeByte(record.direction);
+            dos.writeShort(record.deviceId);
+            dos.writeLong(record.timestampNanos);
+            dos.writeShort(Math.min(record.originalLength, 0xFFFF));
+            dos.writeShort(record.data.length);
+            dos.write(record.data);
+        }
+        dos.flush();
+    }
+
+    /**
+     * Read a capture written by writeTo(). The stream is not closed.
+     *
+     * @throws IOException if the stream is not a capture or is truncated
+     */
+    public static List<Record> readFrom(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("Not a BLE packet capture");
+        }
+        int version = dis.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported capture format version: " + version);
+        }
+        int count = dis.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid record count: " + count);
+        }
+
+        List<Record> records = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            int direction = dis.readUnsignedByte();
+            int deviceId = dis.readUnsignedShort();
+            long timestamp = dis.readLong();
+            int originalLength = dis.readUnsignedShort();
+            byte[] packet = new byte[dis.readUnsignedShort()];
+            dis.readFully(packet);
+            records.add(new Record(direction, deviceId, timestamp, originalLength, packet));
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PacketCapture[" + size + "/" + capacity + ", recorded=" + recorded + "]";
+    }
+
+    private int slot(int index) {
+        return (next - size + index + capacity) % capacity;
+    }
+
+    private static void appendPadded(StringBuilder sb, long value) {
+        if (value < 100) {
+            sb.append('0');
+        }
+        if (value < 10) {
+            sb.append('0');
+        }
+        sb.append(value);
+    }
+}
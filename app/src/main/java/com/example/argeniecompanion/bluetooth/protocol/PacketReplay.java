@@ -0,0 +1,252 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the inbound packets of a PacketCapture on the JVM, so real controller
+ * traffic can be re-run, e.g. from a benchmark. Two targets are supported:
+ * - The receive path alone (per-device fragment reassembly, then in-place parsing)
+ * - A BleProtocolEngine over an InMemoryTransport, so dispatch, the handlers and the
+ *   response path run too, as they do behind BleGattServer
+ *
+ * Outbound packets are skipped. A replay instance keeps its assemblers and its
+ * connected devices between runs; call reset() to start from a clean state.
+ *
+ * Not thread-safe.
+ */
+public class PacketReplay {
+
+    /**
+     * Receives every complete frame of a replay, with the parse result.
+     * The ParsedCommand is reused and only valid during the call.
+     */
+    public interface FrameHandler {
+        void onFrame(PacketCapture.Record record, byte[] frame, ParsedCommand parsed);
+    }
+
+    // Captured devices are connected to the engine under this prefix and their id
+    private static final String DEVICE_ADDRESS_PREFIX = "replay-";
+
+    // Device whose XFER_CANCEL follows each engine run; it is answered only once every
+    // packet queued before it was handled, as it waits in the lowest-priority lane
+    private static final String FENCE_ADDRESS = "replay-fence";
+    private static final byte[] FENCE = fencePacket();
+    private static final byte FENCE_REPLY = (byte) (BleProtocol.CMD_XFER_CANCEL | BleProtocol.RESPONSE_MASK);
+
+    private final Map<Integer, BleFrameAssembler> assemblers = new HashMap<>();
+    private final ParsedCommand parsed = new ParsedCommand();
+
+    // Engine replay: the transport, and the address of each captured device connected to it
+    private InMemoryTransport transport;
+    private final Map<Integer, String> deviceAddresses = new HashMap<>();
+    private final Semaphore fences = new Semaphore(0);
+
+    // Packets the engine sent to captured devices; written on the command thread
+    private volatile long responsePackets;
+
+    private long packets;
+    private long frames;
+    private long invalidFrames;
+    private final long[] commandCounts = new long[256];
+
+    /**
+     * Replay the inbound packets of a capture in order.
+     *
+     * @param handler Called for every complete frame, or null
+     * @return Number of complete frames
+     */
+    public int replay(List<PacketCapture.Record> records, FrameHandler handler) {
+        int replayed = 0;
+        for (int i = 0; i < records.size(); i++) {
+            PacketCapture.Record record = records.get(i);
+            if (record.getDirection() != PacketCapture.DIRECTION_IN) {
+                continue;
+            }
+            packets++;
+
+            BleFrameAssembler assembler = assemblers.get(record.getDeviceId());
+            if (assembler == null) {
+                assembler = new BleFrameAssembler();
+                assemblers.put(record.getDeviceId(), assembler);
+            }
+            byte[] frame = assembler.accept(record.getData());
+            if (frame == null) {
+                continue;
+            }
+
+            BleCommandParser.parse(frame, 0, frame.length, parsed);
+            frames++;
+            replayed++;
+            if (parsed.isValid()) {
+                commandCounts[parsed.getCommand() & 0xFF]++;
+            } else {
+                invalidFrames++;
+            }
+            if (handler != null) {
+                handler.onFrame(record, frame, parsed);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Replay the inbound packets of a capture in order through {@code engine}, which
+     * must be started on {@code transport}. Each captured device is connected as its
+     * own controller on first use. The replay takes over the transport's PacketListener.
+     *
+     * Returns once the engine has handled every packet of the run and sent the replies;
+     * results of deferred commands and state pushes may still follow and count towards
+     * the next run.
+     *
+     * @param timeoutMs How long to wait for the engine to finish the run
+     * @return Number of packets the engine sent to the captured devices during the run
+     * @throws IllegalStateException If the engine did not finish in time
+     */
+    public long replay(List<PacketCapture.Record> records, BleProtocolEngine engine,
+            InMemoryTransport transport, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        attach(transport);
+        long responsesBefore = responsePackets;
+
+        for (int i = 0; i < records.size(); i++) {
+            PacketCapture.Record record = records.get(i);
+            if (record.getDirection() != PacketCapture.DIRECTION_IN) {
+                continue;
+            }
+            packets++;
+
+            String address = deviceAddresses.get(record.getDeviceId());
+            if (address == null) {
+                address = DEVICE_ADDRESS_PREFIX + record.getDeviceId();
+                deviceAddresses.put(record.getDeviceId(), address);
+                transport.connect(address);
+            }
+            transport.write(address, record.getData());
+        }
+
+        // Once the fence is answered every packet was handled; the replies may still
+        // wait in the devices' notification queues
+        transport.write(FENCE_ADDRESS, FENCE);
+        boolean finished = fences.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        while (finished && engine.getNotificationQueueDepth() > 0) {
+            finished = System.nanoTime() < deadline;
+            Thread.yield();
+        }
+        if (!finished) {
+            throw new IllegalStateException("Engine did not finish the replay within " + timeoutMs + " ms");
+        }
+        return responsePackets - responsesBefore;
+    }
+
+    public long getPacketCount() {
+        return packets;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getInvalidFrameCount() {
+        return invalidFrames;
+    }
+
+    /**
+     * Get the number of valid frames replayed for a command.
+     */
+    public long getCommandCount(byte command) {
+        return commandCounts[command & 0xFF];
+    }
+
+    /**
+     * Get the number of packets the engine sent to the captured devices, over all runs.
+     */
+    public long getResponsePacketCount() {
+        return responsePackets;
+    }
+
+    /**
+     * Get the number of partial frames dropped by reassembly, over all devices.
+     */
+    public int getDroppedFrameCount() {
+        int dropped = 0;
+        for (BleFrameAssembler assembler : assemblers.values()) {
+            dropped += assembler.getDroppedFrames();
+        }
+        return dropped;
+    }
+
+    /**
+     * Forget all reassembly state and counters, and disconnect the devices of an engine replay.
+     */
+    public void reset() {
+        detach();
+        assemblers.clear();
+        responsePackets = 0;
+        packets = 0;
+        frames = 0;
+        invalidFrames = 0;
+        Arrays.fill(commandCounts, 0);
+    }
+
+    private void attach(InMemoryTransport transport) {
+        if (this.transport == transport) {
+            return;
+        }
+        detach();
+        this.transport = transport;
+        transport.setPacketListener(this::onEnginePacket);
+        transport.connect(FENCE_ADDRESS);
+    }
+
+    private void detach() {
+        if (transport == null) {
+            return;
+        }
+        for (String address : deviceAddresses.values()) {
+            transport.disconnect(address);
+        }
+        transport.disconnect(FENCE_ADDRESS);
+        transport.setPacketListener(null);
+        deviceAddresses.clear();
+        fences.drainPermits();
+        transport = null;
+    }
+
+    // Called on the engine's command thread
+    private void onEnginePacket(String address, byte[] packet) {
+        if (!FENCE_ADDRESS.equals(address)) {
+            responsePackets++;
+        } else if (packet.length > 1 && packet[1] == FENCE_REPLY) {
+            fences.release();
+        }
+    }
+
+    private static byte[] fencePacket() {
+        // XFER_CANCEL of a transfer that was never offered
+        byte[] packet = {BleProtocol.PROTOCOL_VERSION, BleProtocol.CMD_XFER_CANCEL, 1, 0, 0};
+        packet[4] = BleProtocol.calculateChecksum(packet, 4);
+        return packet;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("packets=").append(packets)
+                .append(", frames=").append(frames)
+                .append(", invalid=").append(invalidFrames)
+                .append(", dropped=").append(getDroppedFrameCount())
+                .append(", responses=").append(responsePackets);
+        for (int i = 0; i < commandCounts.length; i++) {
+            if (commandCounts[i] > 0) {
+                sb.append(", ").append(BleProtocol.getCommandName((byte) i))
+                        .append('=').append(commandCounts[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
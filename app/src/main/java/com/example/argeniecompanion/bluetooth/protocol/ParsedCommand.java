@@ -1,24 +1,56 @@
 package com.example.argeniecompanion.bluetooth.protocol;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Represents a parsed BLE command with its extracted data.
+ *
+ * Instances can be reused as a flyweight: {@link BleCommandParser#parse(byte[], int, int, ParsedCommand)}
+ * resets and refills the same object for every packet. In that mode the payload and the
+ * JOIN_ROOM strings are kept as windows into the source buffer and are only copied/decoded
+ * when a getter asks for them, so the source buffer must not be modified while the
+ * command is in use.
  */
 public class ParsedCommand {
 
-    private final byte command;
-    private final byte[] payload;
-    private final boolean valid;
-    private final byte errorStatus;
+    private byte version;
+    private int requestId;
+    private int sequence;
+    private byte command;
+    private boolean valid;
+    private byte errorStatus;
+
+    // Payload window into the source buffer (not copied)
+    private byte[] source;
+    private int payloadOffset;
+    private int payloadLength;
+    private byte[] payload;
+
+    // JOIN_ROOM windows into the source buffer (only populated for JOIN_ROOM commands)
+    private int linkCodeOffset;
+    private int linkCodeLength;
+    private int userNameOffset;
+    private int userNameLength;
 
-    // Parsed JOIN_ROOM data (only populated for JOIN_ROOM commands)
+    // Lazily decoded JOIN_ROOM data
     private String linkCode;
     private String userName;
 
+    /**
+     * Create an empty, reusable command. It reads as invalid until filled by the parser.
+     */
+    public ParsedCommand() {
+        reset();
+    }
+
     private ParsedCommand(byte command, byte[] payload, boolean valid, byte errorStatus) {
+        this.version = BleProtocol.PROTOCOL_VERSION;
         this.command = command;
-        this.payload = payload;
         this.valid = valid;
         this.errorStatus = errorStatus;
+        this.payload = payload;
+        this.source = payload;
+        this.payloadLength = payload != null ? payload.length : 0;
     }
 
     /**
@@ -42,14 +74,165 @@ public class ParsedCommand {
         return new ParsedCommand(command, null, false, errorStatus);
     }
 
+    /**
+     * Clear all fields so the instance can be refilled for the next packet.
+     *
+     * @return this instance
+     */
+    public ParsedCommand reset() {
+        version = BleProtocol.PROTOCOL_VERSION;
+        requestId = BleProtocol.NO_REQUEST_ID;
+        sequence = BleProtocol.NO_SEQUENCE;
+        command = 0;
+        valid = false;
+        errorStatus = BleProtocol.STATUS_INVALID_COMMAND;
+        source = null;
+        payloadOffset = 0;
+        payloadLength = 0;
+        payload = null;
+        linkCodeOffset = 0;
+        linkCodeLength = 0;
+        userNameOffset = 0;
+        userNameLength = 0;
+        linkCode = null;
+        userName = null;
+        return this;
+    }
+
+    // ==================== Parser Fill Methods ====================
+
+    ParsedCommand setValid(byte version, byte command, byte[] source, int payloadOffset, int payloadLength) {
+        reset();
+        this.version = version;
+        this.command = command;
+        this.valid = true;
+        this.errorStatus = BleProtocol.STATUS_OK;
+        this.source = source;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+        return this;
+    }
+
+    ParsedCommand setInvalid(byte command, byte errorStatus) {
+        reset();
+        this.command = command;
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    ParsedCommand setInvalid(byte version, byte command, byte errorStatus) {
+        setInvalid(command, errorStatus);
+        this.version = version;
+        return this;
+    }
+
+    void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    byte[] getSource() {
+        return source;
+    }
+
+    int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    void setJoinRoomWindows(int linkCodeOffset, int linkCodeLength,
+                            int userNameOffset, int userNameLength) {
+        this.linkCodeOffset = linkCodeOffset;
+        this.linkCodeLength = linkCodeLength;
+        this.userNameOffset = userNameOffset;
+        this.userNameLength = userNameLength;
+    }
+
+    // ==================== Accessors ====================
+
+    /**
+     * Get the protocol version the command was framed with, so the reply can use the same one.
+     * Defaults to v1 when the version byte itself was not usable.
+     */
+    public byte getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the request ID the frame carried (0-255), or BleProtocol.NO_REQUEST_ID.
+     * Also set on invalid frames whose header could be read, so errors can echo it.
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public boolean hasRequestId() {
+        return requestId != BleProtocol.NO_REQUEST_ID;
+    }
+
+    /**
+     * Get the sequence number the frame carried (0-255), or BleProtocol.NO_SEQUENCE.
+     * Only set on valid frames.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    public boolean hasSequence() {
+        return sequence != BleProtocol.NO_SEQUENCE;
+    }
+
     public byte getCommand() {
         return command;
     }
 
+    /**
+     * Get a copy of the payload, or null if there is none.
+     * The copy is made on first call; use {@link #getPayloadLength()} and
+     * {@link #getPayloadByte(int)} on hot paths to avoid it.
+     */
     public byte[] getPayload() {
+        if (payload == null && source != null && payloadLength > 0) {
+            payload = new byte[payloadLength];
+            System.arraycopy(source, payloadOffset, payload, 0, payloadLength);
+        }
         return payload;
     }
 
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Read a single payload byte without copying the payload.
+     */
+    public byte getPayloadByte(int index) {
+        if (index < 0 || index >= payloadLength) {
+            throw new IndexOutOfBoundsException("Payload index " + index + ", length " + payloadLength);
+        }
+        return source[payloadOffset + index];
+    }
+
+    /**
+     * Read a big-endian signed 16-bit payload field starting at index.
+     */
+    public short getPayloadShort(int index) {
+        return (short) ((getPayloadByte(index) & 0xFF) << 8 | (getPayloadByte(index + 1) & 0xFF));
+    }
+
+    /**
+     * Read a big-endian 64-bit payload field starting at index.
+     */
+    public long getPayloadLong(int index) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (getPayloadByte(index + i) & 0xFF);
+        }
+        return value;
+    }
+
     public boolean isValid() {
         return valid;
     }
@@ -59,6 +242,9 @@ public class ParsedCommand {
     }
 
     public String getLinkCode() {
+        if (linkCode == null && linkCodeLength > 0) {
+            linkCode = new String(source, linkCodeOffset, linkCodeLength, StandardCharsets.UTF_8);
+        }
         return linkCode;
     }
 
@@ -67,6 +253,9 @@ public class ParsedCommand {
     }
 
     public String getUserName() {
+        if (userName == null && userNameLength > 0) {
+            userName = new String(source, userNameOffset, userNameLength, StandardCharsets.UTF_8);
+        }
         return userName;
     }
 
@@ -78,10 +267,16 @@ public class ParsedCommand {
     public String toString() {
         if (valid) {
             String result = "ParsedCommand{cmd=" + BleProtocol.getCommandName(command);
-            if (linkCode != null) {
+            if (hasRequestId()) {
+                result += ", requestId=" + requestId;
+            }
+            if (hasSequence()) {
+                result += ", seq=" + sequence;
+            }
+            if (getLinkCode() != null) {
                 result += ", linkCode='" + linkCode + "'";
             }
-            if (userName != null) {
+            if (getUserName() != null) {
                 result += ", userName='" + userName + "'";
             }
             return result + "}";
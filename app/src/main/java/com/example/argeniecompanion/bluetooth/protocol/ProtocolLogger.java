@@ -0,0 +1,23 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Logging used by the protocol engine and transports, so they run on Android
+ * (AndroidProtocolLogger) as well as on a plain JVM (ConsoleProtocolLogger).
+ *
+ * Callers check isDebugEnabled() before building debug messages.
+ */
+public interface ProtocolLogger {
+
+    boolean isDebugEnabled(String tag);
+
+    void d(String tag, String message);
+
+    void i(String tag, String message);
+
+    void w(String tag, String message);
+
+    /**
+     * @param error The cause, or null
+     */
+    void e(String tag, String message, Throwable error);
+}
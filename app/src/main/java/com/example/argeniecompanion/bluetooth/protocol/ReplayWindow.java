@@ -0,0 +1,138 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * The last few sequenced commands of one controller and what they were answered
+ * with, so a retransmitted command is answered again instead of executed again
+ * (see BleProtocol.FRAME_FLAG_SEQUENCE).
+ *
+ * A command is a retransmission if an entry with the same sequence number and
+ * opcode was recorded within ENTRY_TTL_MS; the TTL keeps a controller that restarts
+ * its numbering from being mistaken for a retry. Each entry is in one of three states:
+ * - REPLY: the response is cached, without request ID, to be sent again
+ * - SILENT: the command has no reply, so a retransmission is dropped
+ * - PENDING: a deferred command whose result has not been sent yet; a retransmission
+ *   is dropped, as the result will follow
+ *
+ * Thread Safety: Not thread-safe; BleProtocolEngine uses it on the command thread only.
+ */
+final class ReplayWindow {
+
+    // Sequenced commands remembered per controller
+    static final int SIZE = 16;
+
+    // How long an entry can match a retransmission
+    static final long ENTRY_TTL_MS = 30_000;
+
+    static final int STATE_REPLY = 0;
+    static final int STATE_SILENT = 1;
+    static final int STATE_PENDING = 2;
+
+    private final int[] sequences = new int[SIZE];
+    private final byte[] commands = new byte[SIZE];
+    private final int[] states = new int[SIZE];
+    private final byte[][] responses = new byte[SIZE][];
+    private final long[] recordedAtNanos = new long[SIZE];
+
+    private int count;
+    private int next;
+
+    private long duplicateCount;
+
+    /**
+     * Find the entry a command retransmits.
+     *
+     * @return The entry index, or -1 if the command is new
+     */
+    int find(int sequence, byte command, long nowNanos) {
+        for (int i = 0; i < count; i++) {
+            if (sequences[i] == sequence && commands[i] == command && !isExpired(i, nowNanos)) {
+                duplicateCount++;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int getState(int index) {
+        return states[index];
+    }
+
+    byte[] getResponse(int index) {
+        return responses[index];
+    }
+
+    /**
+     * Remember an executed command, replacing the oldest entry once the window is full.
+     *
+     * @param response The response without request ID, for STATE_REPLY; null otherwise
+     */
+    void record(int sequence, byte command, int state, byte[] response, long nowNanos) {
+        int i = next;
+        sequences[i] = sequence;
+        commands[i] = command;
+        states[i] = state;
+        responses[i] = response;
+        recordedAtNanos[i] = nowNanos;
+        next = (next + 1) % SIZE;
+        if (count < SIZE) {
+            count++;
+        }
+    }
+
+    /**
+     * Cache the result of the newest entry for a deferred command, if it is still pending.
+     *
+     * @param response The result without request ID
+     */
+    void complete(byte command, byte[] response) {
+        for (int n = 1; n <= count; n++) {
+            int i = (next - n + SIZE) % SIZE;
+            if (commands[i] == command) {
+                if (states[i] == STATE_PENDING) {
+                    states[i] = STATE_REPLY;
+                    responses[i] = response;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forget entries whose result will never be sent, e.g. because the connection
+     * they arrived on closed, so a retransmission executes them again.
+     */
+    void dropPending() {
+        for (int i = 0; i < count; i++) {
+            if (states[i] == STATE_PENDING) {
+                // An unmatchable sequence number retires the entry in place
+                sequences[i] = -1;
+                responses[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Check whether every entry is past its TTL, so the window can be discarded.
+     */
+    boolean isExpired(long nowNanos) {
+        for (int i = 0; i < count; i++) {
+            if (!isExpired(i, nowNanos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isExpired(int index, long nowNanos) {
+        return nowNanos - recordedAtNanos[index] > ENTRY_TTL_MS * 1_000_000L;
+    }
+
+    long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    @Override
+    public String toString() {
+        return "entries=" + count + ", duplicates=" + duplicateCount;
+    }
+}
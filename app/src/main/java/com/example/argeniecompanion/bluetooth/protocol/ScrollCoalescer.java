@@ -0,0 +1,93 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+/**
+ * Collapses a stream of scroll deltas into at most one application per window.
+ *
+ * The first delta after a quiet period is applied right away and opens a window;
+ * deltas inside it are summed. When the window closes the owner calls flush(), which
+ * applies the sum and keeps the window open for another round, or closes it if
+ * nothing arrived. Fast scrolling thus moves the view once per frame by the total
+ * distance, instead of restarting a scroll animation for every event.
+ *
+ * Thread Safety: Not thread-safe; BleProtocolEngine uses it on the command thread only.
+ */
+final class ScrollCoalescer {
+
+    /**
+     * Applies a (summed) scroll delta.
+     */
+    interface Applier {
+        void apply(int dx, int dy);
+    }
+
+    private final Applier applier;
+
+    private boolean pending = false;
+    private int dx;
+    private int dy;
+
+    private long requestCount;
+    private long appliedCount;
+
+    ScrollCoalescer(Applier applier) {
+        this.applier = applier;
+    }
+
+    /**
+     * Record a scroll delta, applying it at once if no window is open.
+     *
+     * @return true if this delta opened a new window and a flush must be scheduled
+     */
+    boolean request(int deltaX, int deltaY) {
+        requestCount++;
+        if (pending) {
+            dx += deltaX;
+            dy += deltaY;
+            return false;
+        }
+        pending = true;
+        apply(deltaX, deltaY);
+        return true;
+    }
+
+    /**
+     * Apply the deltas summed during the window.
+     *
+     * @return true if something was applied and the window stays open, so another
+     *         flush must be scheduled
+     */
+    boolean flush() {
+        if (!pending) {
+            return false;
+        }
+        if (dx == 0 && dy == 0) {
+            pending = false;
+            return false;
+        }
+        int x = dx;
+        int y = dy;
+        dx = 0;
+        dy = 0;
+        apply(x, y);
+        return true;
+    }
+
+    /**
+     * Drop the open window and its summed deltas.
+     */
+    void clear() {
+        pending = false;
+        dx = 0;
+        dy = 0;
+    }
+
+    private void apply(int x, int y) {
+        appliedCount++;
+        applier.apply(x, y);
+    }
+
+    @Override
+    public String toString() {
+        return "requests=" + requestCount + ", applied=" + appliedCount;
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BleTransport over TCP on the loopback interface, so BleProtocolEngine can be driven
+ * by a desktop controller simulator or a load generator without a phone or radio.
+ *
+ * Each TCP connection is one device, addressed as "tcp:<remote port>". Packets travel
+ * in both directions as [LEN:2, big-endian][PACKET], where a packet is exactly what a
+ * controller would write to (or receive from) the GATT characteristics, so fragments
+ * and both frame versions behave as over the air. Connections are subscribed from the
+ * start and report LOOPBACK_MTU.
+ *
+ * Thread Safety: One thread accepts connections and one thread per connection reads
+ * packets; send() writes on the caller's (the engine's command) thread.
+ */
+public class TcpLoopbackTransport implements BleTransport {
+
+    private static final String TAG = "TcpLoopbackTransport";
+
+    /**
+     * MTU reported for loopback connections: the largest ATT MTU, so framing
+     * matches a well-behaved BLE link.
+     */
+    public static final int LOOPBACK_MTU = 517;
+
+    /**
+     * One accepted connection.
+     */
+    private static final class Connection {
+        final Socket socket;
+        final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+    private final int requestedPort;
+    private final ProtocolLogger log;
+
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private volatile ServerSocket serverSocket;
+    private volatile Callback callback;
+
+    /**
+     * @param port TCP port to listen on, or 0 for an ephemeral port (see getPort())
+     * @param log  Where to log
+     */
+    public TcpLoopbackTransport(int port, ProtocolLogger log) {
+        this.requestedPort = port;
+        this.log = log;
+    }
+
+    /**
+     * Get the port the transport listens on, or -1 if not started.
+     */
+    public int getPort() {
+        ServerSocket server = serverSocket;
+        return server != null ? server.getLocalPort() : -1;
+    }
+
+    @Override
+    public synchronized boolean start(Callback callback) {
+        if (serverSocket != null) {
+            return true;
+        }
+
+        try {
+            serverSocket = new ServerSocket(requestedPort, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            log.e(TAG, "Failed to listen on port " + requestedPort, e);
+            return false;
+        }
+        this.callback = callback;
+
+        Thread acceptThread = new Thread(this::acceptLoop, "TcpLoopbackAccept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        log.i(TAG, "Listening on " + serverSocket.getLocalSocketAddress());
+        return true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        callback = null;
+
+        ServerSocket server = serverSocket;
+        serverSocket = null;
+        if (server != null) {
+            closeQuietly(server);
+        }
+
+        for (Connection connection : connections.values()) {
+            closeQuietly(connection.socket);
+        }
+        connections.clear();
+    }
+
+    @Override
+    public boolean send(String address, byte[] packet) {
+        Connection connection = connections.get(address);
+        if (connection == null) {
+            return false;
+        }
+
+        boolean success;
+        try {
+            synchronized (connection) {
+                connection.out.writeShort(packet.length);
+                connection.out.write(packet);
+                connection.out.flush();
+            }
+            success = true;
+        } catch (IOException e) {
+            log.w(TAG, "Send to " + address + " failed: " + e.getMessage());
+            success = false;
+        }
+
+        // The socket has taken the packet, which is what onNotificationSent() means over BLE
+        Callback cb = callback;
+        if (cb != null) {
+            cb.onPacketSent(address, success);
+        }
+        return true;
+    }
+
+    private void acceptLoop() {
+        ServerSocket server = serverSocket;
+        while (server != null && !server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+
+                String address = "tcp:" + socket.getPort();
+                Connection connection = new Connection(socket);
+                connections.put(address, connection);
+
+                Callback cb = callback;
+                if (cb == null) {
+                    closeQuietly(socket);
+                    return;
+                }
+                cb.onDeviceConnected(address, "loopback");
+                cb.onMtuChanged(address, LOOPBACK_MTU);
+                cb.onSubscriptionChanged(address, true);
+
+                Thread reader = new Thread(() -> readLoop(address, connection), "TcpLoopback-" + address);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (SocketException e) {
+                // Server socket closed by stop()
+                return;
+            } catch (IOException e) {
+                log.w(TAG, "Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void readLoop(String address, Connection connection) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(connection.socket.getInputStream()))) {
+            while (true) {
+                int length = in.readUnsignedShort();
+                byte[] packet = new byte[length];
+                in.readFully(packet);
+
+                Callback cb = callback;
+                if (cb == null) {
+                    return;
+                }
+                cb.onPacketReceived(address, packet, System.nanoTime());
+            }
+        } catch (EOFException | SocketException e) {
+            // Peer closed the connection, or stop() closed the socket
+        } catch (IOException e) {
+            log.w(TAG, "Read from " + address + " failed: " + e.getMessage());
+        } finally {
+            closeQuietly(connection.socket);
+            if (connections.remove(address, connection)) {
+                Callback cb = callback;
+                if (cb != null) {
+                    cb.onDeviceDisconnected(address);
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.argeniecompanion.bluetooth.protocol;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Collapses rapid on/off requests for one toggle (mic or camera) into a single
+ * application of the final state.
+ *
+ * The first request opens a fixed window; requests inside it only update the
+ * desired state. When the window closes the owner calls flush(), which applies the
+ * final state once. It is applied even if it matches the current state: that is only
+ * the server's mirror of the call, which may have drifted from the real one. Until
+ * then effective() reports the desired state, so every command is acked with the
+ * state the user will end up in.
+ *
+ * Thread Safety: Not thread-safe; BleProtocolEngine uses it on the command thread only.
+ */
+final class ToggleCoalescer {
+
+    /**
+     * Applies the final state of a window.
+     */
+    interface Applier {
+        void apply(boolean on);
+    }
+
+    private final BooleanSupplier current;
+    private final Applier applier;
+
+    private boolean pending = false;
+    private boolean desired;
+
+    private long requestCount;
+    private long appliedCount;
+
+    /**
+     * @param current Reads the state currently applied (e.g. as reported by the app)
+     * @param applier Applies the final state of a window
+     */
+    ToggleCoalescer(BooleanSupplier current, Applier applier) {
+        this.current = current;
+        this.applier = applier;
+    }
+
+    /**
+     * Record a requested state.
+     *
+     * @return true if this request opened a new window and a flush must be scheduled
+     */
+    boolean request(boolean on) {
+        requestCount++;
+        desired = on;
+        if (pending) {
+            return false;
+        }
+        pending = true;
+        return true;
+    }
+
+    /**
+     * Get the state replies should report: the desired state while a window is open,
+     * the current state otherwise.
+     */
+    boolean effective() {
+        return pending ? desired : current.getAsBoolean();
+    }
+
+    /**
+     * Close the window and apply the desired state.
+     *
+     * @return true if a window was open and the applier was called
+     */
+    boolean flush() {
+        if (!pending) {
+            return false;
+        }
+        pending = false;
+        appliedCount++;
+        applier.apply(desired);
+        return true;
+    }
+
+    long getRequestCount() {
+        return requestCount;
+    }
+
+    long getAppliedCount() {
+        return appliedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "requests=" + requestCount + ", applied=" + appliedCount;
+    }
+}
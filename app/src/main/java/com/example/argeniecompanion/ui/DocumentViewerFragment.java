@@ -188,6 +188,7 @@ public class DocumentViewerFragment extends Fragment {
     }
 
     private void navigatePage(int delta) {
+        if (rendering) return; // edge callbacks repeat while the next page renders
         int next = currentPage + delta;
         if (next < 0 || next >= pageCount) return;
         currentPage = next;
@@ -292,4 +293,13 @@ public class DocumentViewerFragment extends Fragment {
         }
         return false;
     }
+
+    /**
+     * Scroll by a remote scroll delta (display pixels, positive = down).
+     * Applied without animation: deltas already arrive once per frame.
+     */
+    public void handleNavScroll(int dy) {
+        if (pdfView.getVisibility() != View.VISIBLE || dy == 0) return;
+        pdfView.scrollImmediate(dy);
+    }
 }
@@ -271,6 +271,14 @@ public class DocumentsFragment extends Fragment {
         return false;
     }
 
+    /**
+     * Scroll the list by a remote scroll delta (display pixels, positive = down).
+     */
+    public void handleNavScroll(int dy) {
+        if (recyclerView == null || recyclerView.getVisibility() != View.VISIBLE) return;
+        recyclerView.scrollBy(0, dy);
+    }
+
     // -------------------------------------------------------------------------
     // Helpers
     // -------------------------------------------------------------------------
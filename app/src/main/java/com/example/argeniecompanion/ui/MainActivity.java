@@ -202,6 +202,8 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
             runOnUiThread(() -> {
                 if (currentState == UIState.IN_CALL) {
                     addLog("JOIN_ROOM received while already in call, ignoring");
+                    // Ends the join the server accepted, so retries are not absorbed
+                    sendBleCommandResult(BleProtocol.CMD_ROOM_JOINED, false);
                     return;
                 }
 
@@ -294,8 +296,45 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
                 }
             });
         }
+
+        // Remote D-pad input skips the UIState checks: it goes wherever a local
+        // D-pad press would, and is not logged, as it arrives many times a second
+        @Override
+        public void onNavKey(int key) {
+            int keyCode = toKeyCode(key);
+            if (keyCode == KeyEvent.KEYCODE_UNKNOWN) return;
+            runOnUiThread(() -> {
+                dispatchKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, keyCode));
+                dispatchKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, keyCode));
+            });
+        }
+
+        @Override
+        public void onNavScroll(int dx, int dy) {
+            runOnUiThread(() -> {
+                androidx.fragment.app.Fragment current =
+                        getSupportFragmentManager().findFragmentById(R.id.fragment_container);
+                if (current instanceof DocumentsFragment) {
+                    ((DocumentsFragment) current).handleNavScroll(dy);
+                } else if (current instanceof DocumentViewerFragment) {
+                    ((DocumentViewerFragment) current).handleNavScroll(dy);
+                }
+            });
+        }
     };
 
+    private static int toKeyCode(int navKey) {
+        switch (navKey) {
+            case BleProtocol.NAV_KEY_UP:     return KeyEvent.KEYCODE_DPAD_UP;
+            case BleProtocol.NAV_KEY_DOWN:   return KeyEvent.KEYCODE_DPAD_DOWN;
+            case BleProtocol.NAV_KEY_LEFT:   return KeyEvent.KEYCODE_DPAD_LEFT;
+            case BleProtocol.NAV_KEY_RIGHT:  return KeyEvent.KEYCODE_DPAD_RIGHT;
+            case BleProtocol.NAV_KEY_CENTER: return KeyEvent.KEYCODE_DPAD_CENTER;
+            case BleProtocol.NAV_KEY_BACK:   return KeyEvent.KEYCODE_BACK;
+            default:                         return KeyEvent.KEYCODE_UNKNOWN;
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -503,6 +542,7 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
         updateUIState(UIState.JOINING);
         statusTv.setText(R.string.status_validating);
         AppLogger.i(TAG, "Phase 1: Validating link code " + linkCode);
+        sendBleJoinProgress(BleProtocol.JOIN_PHASE_VALIDATE);
 
         ArGenieApp.userName = this.userName;
 
@@ -534,6 +574,7 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
     private void startPhase2() {
         statusTv.setText(R.string.status_generating_user);
         AppLogger.i(TAG, "Phase 2: Generating user ID");
+        sendBleJoinProgress(BleProtocol.JOIN_PHASE_CONNECT);
 
         ArGenieApp.getInstance().generateUserId(new ArGenieApp.ContinueJoinWithLinkId() {
             @Override
@@ -588,6 +629,7 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
     private void startPhase3() {
         runOnUiThread(() -> statusTv.setText(R.string.status_joining_room));
         AppLogger.i(TAG, "Phase 3: Joining room");
+        sendBleJoinProgress(BleProtocol.JOIN_PHASE_JOIN_ROOM);
 
         RemoteCallApi.joinRoomApi(linkCode, userId, hostCompanyId, new RemoteCallApi.RemoteApiCallbacks() {
             @Override
@@ -647,6 +689,7 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
     private void startPhase4() {
         statusTv.setText(R.string.status_connecting_livekit);
         AppLogger.i(TAG, "Phase 4: Generating LiveKit token and connecting");
+        sendBleJoinProgress(BleProtocol.JOIN_PHASE_MEDIA);
         addLog("Connecting to LiveKit...");
 
         liveKitWrapper = new LiveKitWrapper(getApplicationContext());
@@ -746,6 +789,12 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
         }
     }
 
+    private void sendBleJoinProgress(int phase) {
+        if (bleServiceBound && bleService != null) {
+            bleService.sendJoinProgress(phase);
+        }
+    }
+
     // -------------------- BLUETOOTH SERVICE --------------------
 
     private void startBluetoothService() {
@@ -988,6 +1037,7 @@ public class MainActivity extends AppCompatActivity implements MqttWebRTC.Messag
                 Toast.makeText(this, "Camera and microphone permissions are required for calls", Toast.LENGTH_LONG).show();
                 addLog("Call permissions denied");
                 updateUIState(UIState.SERVER_RUNNING);
+                sendBleCommandResult(BleProtocol.CMD_ROOM_JOINED, false);
             }
         }
     }
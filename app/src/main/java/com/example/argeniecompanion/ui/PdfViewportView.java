@@ -149,6 +149,32 @@ public class PdfViewportView extends View {
         anim.start();
     }
 
+    /**
+     * Move the viewport by {@code displayPx} display pixels without animating.
+     * Positive = down, negative = up.
+     *
+     * <p>For continuous input that already arrives once per frame (remote
+     * scrolling), where restarting {@link #smoothScroll} each time would lose
+     * distance.  Fires the {@link ScrollCallback} when pushing against an edge.
+     */
+    public void scrollImmediate(int displayPx) {
+        if (pageBitmap == null || pageBitmap.isRecycled()) return;
+        if (getWidth() == 0 || getHeight() == 0)          return;
+
+        cancelAnim();
+
+        float renderScale = (float) pageBitmap.getWidth() / getWidth();
+        int   maxY        = maxViewportY(pageBitmap);
+        int   targetY     = Math.max(0, Math.min(viewportY + (int) (displayPx * renderScale), maxY));
+
+        if (targetY != viewportY) {
+            viewportY = targetY;
+            invalidate();
+        }
+        if (displayPx > 0 && targetY >= maxY - EDGE_PX && scrollCallback != null) scrollCallback.onBottomEdgeReached();
+        if (displayPx < 0 && targetY <= EDGE_PX        && scrollCallback != null) scrollCallback.onTopEdgeReached();
+    }
+
     // ── Drawing ───────────────────────────────────────────────────────────────
 
     @Override
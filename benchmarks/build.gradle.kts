@@ -0,0 +1,41 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The BLE protocol codec and engine are plain Java, so compile it straight from the app sources
+// instead of depending on the Android module. Classes that touch Android APIs stay out.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/example/argeniecompanion/bluetooth/protocol/**")
+            exclude(
+                "**/AndroidProtocolLogger.java",
+                "**/BleAdvertiser.java",
+                "**/BatteryStateProvider.java",
+                "**/BleGattServer.java",
+                "**/BleGattServerService.java",
+                "**/BleGattTransport.java"
+            )
+        }
+    }
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
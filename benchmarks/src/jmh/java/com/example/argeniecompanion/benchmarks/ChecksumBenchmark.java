@@ -0,0 +1,48 @@
+package com.example.argeniecompanion.benchmarks;
+
+import com.example.argeniecompanion.bluetooth.protocol.BleProtocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the v1 XOR checksum with the v2 table-driven CRC-16 on realistic frame sizes:
+ * an ACK (5), a status response (7), a full default-MTU packet (20),
+ * a typical JOIN_ROOM (64) and the largest frame the LENGTH byte allows (260).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChecksumBenchmark {
+
+    @Param({"5", "7", "20", "64", "260"})
+    public int frameSize;
+
+    private byte[] frame;
+
+    @Setup
+    public void setUp() {
+        frame = new byte[frameSize];
+        new Random(42).nextBytes(frame);
+        frame[0] = BleProtocol.PROTOCOL_VERSION;
+    }
+
+    @Benchmark
+    public byte xorChecksum() {
+        return BleProtocol.calculateChecksum(frame, frame.length - 1);
+    }
+
+    @Benchmark
+    public int crc16() {
+        return BleProtocol.calculateCrc16(frame, 0, frame.length - 2);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.argeniecompanion.benchmarks;
+
+import com.example.argeniecompanion.bluetooth.protocol.BleFragmenter;
+import com.example.argeniecompanion.bluetooth.protocol.BleProtocol;
+import com.example.argeniecompanion.bluetooth.protocol.BleProtocolEngine;
+import com.example.argeniecompanion.bluetooth.protocol.ConsoleProtocolLogger;
+import com.example.argeniecompanion.bluetooth.protocol.InMemoryTransport;
+import com.example.argeniecompanion.bluetooth.protocol.PacketCapture;
+import com.example.argeniecompanion.bluetooth.protocol.PacketReplay;
+import com.example.argeniecompanion.bluetooth.protocol.TcpLoopbackTransport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a BLE packet capture, either through fragment reassembly and the parser
+ * alone (target=parser) or through the whole protocol engine over an
+ * InMemoryTransport (target=engine), including dispatch and responses.
+ *
+ * By default a synthetic capture of typical controller traffic is used. To replay
+ * real traffic, export it with BleGattServerService.exportPacketCapture() and pass
+ * the file as the capture parameter:
+ *   ./gradlew :benchmarks:jmhJar
+ *   java -jar benchmarks/build/libs/benchmarks-jmh.jar PacketReplay -p capture=/path/to/file.bcap
+ * Reported time is per replay of the whole capture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacketReplayBenchmark {
+
+    private static final long REPLAY_TIMEOUT_MS = 5000;
+
+    @Param({""})
+    public String capture;
+
+    @Param({"parser", "engine"})
+    public String target;
+
+    private List<PacketCapture.Record> records;
+    private final PacketReplay replay = new PacketReplay();
+
+    private BleProtocolEngine engine;
+    private InMemoryTransport memory;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        if (capture.isEmpty()) {
+            records = syntheticCapture();
+        } else {
+            try (InputStream in = new FileInputStream(capture)) {
+                records = PacketCapture.readFrom(in);
+            }
+        }
+
+        replay.replay(records, null);
+        if (replay.getFrameCount() == 0) {
+            throw new IllegalStateException("Capture has no inbound frames: " + capture);
+        }
+        replay.reset();
+
+        if ("engine".equals(target)) {
+            // The engine logs every command at info level; printing it would be measured too
+            ConsoleProtocolLogger log = new ConsoleProtocolLogger(new PrintStream(OutputStream.nullOutputStream()), false);
+            memory = new InMemoryTransport(TcpLoopbackTransport.LOOPBACK_MTU);
+            engine = new BleProtocolEngine(memory, BleProtocolEngine.NO_BATTERY, log);
+            if (!engine.start()) {
+                throw new IllegalStateException("Engine failed to start");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        // Disconnect the replayed devices while the engine still runs
+        replay.reset();
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    @Benchmark
+    public long replayCapture() throws InterruptedException {
+        if (memory != null) {
+            return replay.replay(records, engine, memory, REPLAY_TIMEOUT_MS);
+        }
+        return replay.replay(records, null);
+    }
+
+    /**
+     * A session's worth of controller traffic: HELLO, status polls, mute toggles,
+     * a fragmented JOIN_ROOM, round-tripped through the export format.
+     */
+    private static List<PacketCapture.Record> syntheticCapture() throws IOException {
+        PacketCapture source = new PacketCapture(512);
+        long time = 0;
+        record(source, time, frame(BleProtocol.CMD_HELLO, new byte[]{
+                BleProtocol.PROTOCOL_VERSION_2, BleProtocol.SERVER_CAPABILITIES}));
+
+        byte[] join = frame(BleProtocol.CMD_JOIN_ROOM, joinRoomPayload("929-845-519", "VUZIX"));
+        for (byte[] packet : BleFragmenter.fragment(join, BleProtocol.DEFAULT_ATT_MTU)) {
+            record(source, time += 2_000_000, packet);
+        }
+
+        byte[][] steady = {
+                frame(BleProtocol.CMD_PING, new byte[0]),
+                frame(BleProtocol.CMD_GET_STATUS, new byte[0]),
+                frame(BleProtocol.CMD_MIC_MUTE, new byte[0]),
+                frame(BleProtocol.CMD_MIC_UNMUTE, new byte[0]),
+                frame(BleProtocol.CMD_VIDEO_MUTE, new byte[0]),
+                frame(BleProtocol.CMD_VIDEO_UNMUTE, new byte[0]),
+        };
+        for (int i = 0; i < 400; i++) {
+            record(source, time += 50_000_000, steady[i % steady.length]);
+        }
+        record(source, time + 50_000_000, frame(BleProtocol.CMD_LEAVE_ROOM, new byte[0]));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.writeTo(out);
+        return PacketCapture.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static void record(PacketCapture capture, long time, byte[] packet) {
+        capture.record(PacketCapture.DIRECTION_IN, 1, time, packet);
+    }
+
+    private static byte[] joinRoomPayload(String linkCode, String userName) {
+        byte[] lc = linkCode.getBytes(StandardCharsets.UTF_8);
+        byte[] un = userName.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + lc.length + un.length];
+        payload[0] = (byte) lc.length;
+        System.arraycopy(lc, 0, payload, 1, lc.length);
+        payload[1 + lc.length] = (byte) un.length;
+        System.arraycopy(un, 0, payload, 2 + lc.length, un.length);
+        return payload;
+    }
+
+    private static byte[] frame(byte command, byte[] payload) {
+        byte[] frame = new byte[BleProtocol.MIN_PACKET_SIZE + payload.length];
+        frame[0] = BleProtocol.PROTOCOL_VERSION;
+        frame[1] = command;
+        frame[2] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 3, payload.length);
+        frame[frame.length - 1] = BleProtocol.calculateChecksum(frame, frame.length - 1);
+        return frame;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.argeniecompanion.benchmarks;
+
+import com.example.argeniecompanion.bluetooth.protocol.BleCommandParser;
+import com.example.argeniecompanion.bluetooth.protocol.BleProtocol;
+import com.example.argeniecompanion.bluetooth.protocol.BleResponseBuilder;
+import com.example.argeniecompanion.bluetooth.protocol.ParsedCommand;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the BLE protocol codec on the frames a controller actually sends.
+ *
+ * Run with the GC profiler (enabled in build.gradle.kts) to see the allocation rate:
+ *   ./gradlew :benchmarks:jmh
+ * The *Reused variants parse into one ParsedCommand, as BleGattServer does, and
+ * should report ~0 B/op; the others show the cost of the allocating API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProtocolCodecBenchmark {
+
+    private byte[] pingFrame;
+    private byte[] badChecksumFrame;
+    private byte[] joinRoomFrame;
+    private byte[] maxJoinRoomFrame;
+    private byte[] statusResponse;
+
+    private final ParsedCommand reused = new ParsedCommand();
+
+    @Setup
+    public void setUp() {
+        pingFrame = frame(BleProtocol.CMD_PING, new byte[0]);
+
+        badChecksumFrame = frame(BleProtocol.CMD_GET_STATUS, new byte[0]);
+        badChecksumFrame[badChecksumFrame.length - 1] ^= 0x5A;
+
+        joinRoomFrame = frame(BleProtocol.CMD_JOIN_ROOM, joinRoomPayload("929-845-519", "VUZIX"));
+
+        // 1 + 126 + 1 + 127 = 255, the largest payload the LENGTH byte can describe
+        char[] linkCode = new char[126];
+        char[] userName = new char[127];
+        Arrays.fill(linkCode, 'L');
+        Arrays.fill(userName, 'U');
+        maxJoinRoomFrame = frame(BleProtocol.CMD_JOIN_ROOM,
+                joinRoomPayload(new String(linkCode), new String(userName)));
+
+        statusResponse = BleResponseBuilder.buildCommandStatusResponse(
+                BleProtocol.CMD_GET_STATUS, BleProtocol.STATUS_OK, 87, true, false, true);
+
+        requireValid(pingFrame, true);
+        requireValid(badChecksumFrame, false);
+        requireValid(joinRoomFrame, true);
+        requireValid(maxJoinRoomFrame, true);
+    }
+
+    // ==================== Parser ====================
+
+    @Benchmark
+    public ParsedCommand parsePing() {
+        return BleCommandParser.parse(pingFrame);
+    }
+
+    @Benchmark
+    public ParsedCommand parsePingReused() {
+        return BleCommandParser.parse(pingFrame, 0, pingFrame.length, reused);
+    }
+
+    @Benchmark
+    public ParsedCommand parseInvalidChecksum() {
+        return BleCommandParser.parse(badChecksumFrame);
+    }
+
+    @Benchmark
+    public ParsedCommand parseInvalidChecksumReused() {
+        return BleCommandParser.parse(badChecksumFrame, 0, badChecksumFrame.length, reused);
+    }
+
+    @Benchmark
+    public void parseJoinRoom(Blackhole bh) {
+        ParsedCommand parsed = BleCommandParser.parse(joinRoomFrame);
+        bh.consume(parsed.getLinkCode());
+        bh.consume(parsed.getUserName());
+    }
+
+    @Benchmark
+    public ParsedCommand parseJoinRoomReused() {
+        return BleCommandParser.parse(joinRoomFrame, 0, joinRoomFrame.length, reused);
+    }
+
+    @Benchmark
+    public void parseMaxJoinRoom(Blackhole bh) {
+        ParsedCommand parsed = BleCommandParser.parse(maxJoinRoomFrame);
+        bh.consume(parsed.getLinkCode());
+        bh.consume(parsed.getUserName());
+    }
+
+    @Benchmark
+    public ParsedCommand parseMaxJoinRoomReused() {
+        return BleCommandParser.parse(maxJoinRoomFrame, 0, maxJoinRoomFrame.length, reused);
+    }
+
+    // ==================== Response Builder / Utilities ====================
+
+    @Benchmark
+    public byte[] buildCommandStatusResponse() {
+        return BleResponseBuilder.buildCommandStatusResponse(
+                BleProtocol.CMD_MIC_MUTE, BleProtocol.STATUS_OK, 87, true, false, true);
+    }
+
+    @Benchmark
+    public byte calculateChecksumMaxFrame() {
+        return BleProtocol.calculateChecksum(maxJoinRoomFrame, maxJoinRoomFrame.length - 1);
+    }
+
+    @Benchmark
+    public String toHexStringStatusResponse() {
+        return BleCommandParser.toHexString(statusResponse);
+    }
+
+    @Benchmark
+    public String toHexStringMaxFrame() {
+        return BleCommandParser.toHexString(maxJoinRoomFrame);
+    }
+
+    // ==================== Frame Helpers ====================
+
+    private static byte[] joinRoomPayload(String linkCode, String userName) {
+        byte[] lc = linkCode.getBytes(StandardCharsets.UTF_8);
+        byte[] un = userName.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + lc.length + un.length];
+        payload[0] = (byte) lc.length;
+        System.arraycopy(lc, 0, payload, 1, lc.length);
+        payload[1 + lc.length] = (byte) un.length;
+        System.arraycopy(un, 0, payload, 2 + lc.length, un.length);
+        return payload;
+    }
+
+    private static byte[] frame(byte command, byte[] payload) {
+        byte[] frame = new byte[BleProtocol.MIN_PACKET_SIZE + payload.length];
+        frame[0] = BleProtocol.PROTOCOL_VERSION;
+        frame[1] = command;
+        frame[2] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 3, payload.length);
+        frame[frame.length - 1] = BleProtocol.calculateChecksum(frame, frame.length - 1);
+        return frame;
+    }
+
+    private static void requireValid(byte[] frame, boolean expected) {
+        if (BleCommandParser.parse(frame).isValid() != expected) {
+            throw new IllegalStateException("Benchmark frame has unexpected validity: "
+                    + BleCommandParser.toHexString(frame));
+        }
+    }
+}
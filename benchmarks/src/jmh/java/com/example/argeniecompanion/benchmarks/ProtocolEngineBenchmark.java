@@ -0,0 +1,163 @@
+package com.example.argeniecompanion.benchmarks;
+
+import com.example.argeniecompanion.bluetooth.protocol.BleProtocol;
+import com.example.argeniecompanion.bluetooth.protocol.BleProtocolEngine;
+import com.example.argeniecompanion.bluetooth.protocol.BleTransport;
+import com.example.argeniecompanion.bluetooth.protocol.ConsoleProtocolLogger;
+import com.example.argeniecompanion.bluetooth.protocol.InMemoryTransport;
+import com.example.argeniecompanion.bluetooth.protocol.TcpLoopbackTransport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the whole protocol engine (parse, dispatch, respond, notification
+ * pacing) on the JVM, through the same code paths the GATT server uses on a phone.
+ *
+ * The transport parameter picks InMemoryTransport (engine cost only) or
+ * TcpLoopbackTransport (engine plus a real socket round trip), e.g.:
+ *   java -jar benchmarks/build/libs/benchmarks-jmh.jar ProtocolEngine -p transport=tcp
+ * Reported throughput is commands per millisecond; roundTrip waits for each reply,
+ * pipelined keeps BURST commands outstanding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProtocolEngineBenchmark {
+
+    private static final int BURST = 64;
+    private static final String DEVICE = "bench";
+
+    @Param({"memory", "tcp"})
+    public String transport;
+
+    private BleProtocolEngine engine;
+    private final Semaphore replies = new Semaphore(0);
+
+    private InMemoryTransport memory;
+    private Socket socket;
+    private DataOutputStream socketOut;
+
+    private byte[] ping;
+    private byte[] getStatus;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        ping = frame(BleProtocol.CMD_PING);
+        getStatus = frame(BleProtocol.CMD_GET_STATUS);
+
+        // The engine logs every command at info level; printing it would be measured too
+        ConsoleProtocolLogger log = new ConsoleProtocolLogger(new PrintStream(OutputStream.nullOutputStream()), false);
+        if ("tcp".equals(transport)) {
+            TcpLoopbackTransport tcp = new TcpLoopbackTransport(0, log);
+            startEngine(tcp, log);
+
+            socket = new Socket(InetAddress.getLoopbackAddress(), tcp.getPort());
+            socket.setTcpNoDelay(true);
+            socketOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Thread reader = new Thread(this::readReplies, "BenchmarkReader");
+            reader.setDaemon(true);
+            reader.start();
+        } else {
+            memory = new InMemoryTransport(TcpLoopbackTransport.LOOPBACK_MTU);
+            memory.setPacketListener((address, packet) -> replies.release());
+            startEngine(memory, log);
+            memory.connect(DEVICE);
+        }
+
+        // Wait until the connection is set up on the engine side
+        send(ping);
+        awaitReplies(1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+        engine.stop();
+    }
+
+    @Benchmark
+    public void roundTrip() throws IOException, InterruptedException {
+        send(ping);
+        awaitReplies(1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void pipelined() throws IOException, InterruptedException {
+        for (int i = 0; i < BURST; i++) {
+            send(getStatus);
+        }
+        if (socketOut != null) {
+            socketOut.flush();
+        }
+        awaitReplies(BURST);
+    }
+
+    private void startEngine(BleTransport bleTransport, ConsoleProtocolLogger log) {
+        engine = new BleProtocolEngine(bleTransport, BleProtocolEngine.NO_BATTERY, log);
+        if (!engine.start()) {
+            throw new IllegalStateException("Engine failed to start over " + transport);
+        }
+    }
+
+    private void send(byte[] packet) throws IOException {
+        if (socketOut != null) {
+            socketOut.writeShort(packet.length);
+            socketOut.write(packet);
+            if (packet == ping) {
+                socketOut.flush();
+            }
+        } else {
+            memory.write(DEVICE, packet);
+        }
+    }
+
+    private void awaitReplies(int count) throws InterruptedException {
+        if (!replies.tryAcquire(count, 5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("No reply from the engine over " + transport);
+        }
+    }
+
+    private void readReplies() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                in.readFully(new byte[in.readUnsignedShort()]);
+                replies.release();
+            }
+        } catch (IOException e) {
+            // Socket closed in tearDown()
+        }
+    }
+
+    private static byte[] frame(byte command) {
+        byte[] frame = new byte[BleProtocol.MIN_PACKET_SIZE];
+        frame[0] = BleProtocol.PROTOCOL_VERSION;
+        frame[1] = command;
+        frame[2] = 0;
+        frame[3] = BleProtocol.calculateChecksum(frame, frame.length - 1);
+        return frame;
+    }
+}
@@ -22,4 +22,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "ArGenie Companion"
 include(":app")
+include(":benchmarks")
  
\ No newline at end of file